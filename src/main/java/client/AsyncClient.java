@@ -0,0 +1,192 @@
+package client;
+
+import client.interfaces.IAsyncClient;
+import lombok.extern.slf4j.Slf4j;
+import server.SelectorLoop;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Embeddable client for a single endpoint: requests are encoded into pooled buffers and pipelined over a small
+ * pool of keep-alive connections whose I/O is driven by {@link ClientConfig#selectorThreads()} selector threads.
+ * <pre>
+ * try (var client = new AsyncClient(new InetSocketAddress("localhost", 9998))) {
+ *     client.send("/hello", Map.of(), body).thenAccept(response -> ...);
+ * }
+ * </pre>
+ * Clients on the same host as the server can connect to its unix socket instead, e.g.
+ * {@code new AsyncClient(UnixDomainSocketAddress.of("tiny-tcp.sock"))}.
+ */
+@Slf4j
+public class AsyncClient implements IAsyncClient {
+    private final ClientConfig config;
+    private final SelectorLoop[] loops;
+    private final ClientBufferPool bufferPool;
+    private final ConnectionPool connectionPool;
+    private volatile boolean closed = false;
+
+    public AsyncClient(SocketAddress address) throws IOException {
+        this(address, ClientConfig.defaults());
+    }
+
+    public AsyncClient(SocketAddress address, ClientConfig config) throws IOException {
+        this.config = config;
+        this.bufferPool = new ClientBufferPool(config.bufferSize(), config.maxPooledBuffers());
+        this.loops = new SelectorLoop[config.selectorThreads()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop("tiny-tcp-client-" + i);
+        }
+        this.connectionPool = new ConnectionPool(address, config, loops, bufferPool);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(String path, Map<String, String> headers, byte[] body) {
+        return send(path, headers, body, null);
+    }
+
+    /**
+     * Sends on a connection that is not in used (opening one if a slot is free) and adds that connection to used,
+     * so a hedge does not queue behind the attempt it races. Returns null without sending when every other
+     * connection is at its pipeline depth.
+     */
+    CompletableFuture<Response> send(String path, Map<String, String> headers, byte[] body, Set<PipelinedConnection> used) {
+        if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+
+        ByteBuffer frame;
+        try {
+            // the server closes the connection after the response unless asked to keep it alive
+            frame = bufferPool.acquire(RequestEncoder.encodedSizeKeepAlive(path, headers, body == null ? 0 : body.length));
+            RequestEncoder.encodeKeepAlive(frame, path, headers, body);
+            frame.flip();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return dispatch(frame, used);
+    }
+
+    /**
+     * Sends the requests in one batch frame, the server runs them in parallel and answers once all of them are done.
+     * The responses are in request order, each with its own status. Fails if the server rejects the whole batch.
+     */
+    public CompletableFuture<List<Response>> sendBatch(Map<String, String> headers, List<BatchRequest> requests) {
+        if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+
+        ByteBuffer frame;
+        try {
+            frame = bufferPool.acquire(RequestEncoder.encodedBatchSize(headers, requests));
+            RequestEncoder.encodeBatch(frame, headers, requests);
+            frame.flip();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return dispatch(frame).thenApply(AsyncClient::decodeBatch);
+    }
+
+    static List<Response> decodeBatch(Response response) {
+        if (response.status() != 200) {
+            throw new IllegalStateException("Batch rejected with status " + response.status() + ": " + response.bodyAsString());
+        }
+        var body = ByteBuffer.wrap(response.body());
+        int count = body.getInt();
+        List<Response> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int status = body.getInt();
+            var bytes = new byte[body.getInt()];
+            body.get(bytes);
+            responses.add(new Response(status, bytes));
+        }
+        return responses;
+    }
+
+    /**
+     * Sends a request whose header block is already encoded, e.g. one a proxy received, without encoding it again.
+     * The header block has to ask for Keep-Alive. Both buffers are copied, their positions are left as they are.
+     */
+    public CompletableFuture<Response> forward(ByteBuffer headerBlock, ByteBuffer body) {
+        if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+
+        var frame = bufferPool.acquire(8 + headerBlock.remaining() + body.remaining());
+        frame.putInt(headerBlock.remaining()).putInt(body.remaining()).put(headerBlock.duplicate()).put(body.duplicate());
+        frame.flip();
+        return dispatch(frame);
+    }
+
+    /**
+     * Sends a request built from a template, see {@link #template(String, Map)}.
+     */
+    public CompletableFuture<Response> send(FrameTemplate template, byte[] body) {
+        if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+
+        var frame = bufferPool.acquire(template.encodedSize(body == null ? 0 : body.length));
+        template.encode(frame, body);
+        frame.flip();
+        return dispatch(frame);
+    }
+
+    /**
+     * Compiles a keep-alive template for requests that only differ in their body.
+     */
+    public static FrameTemplate template(String path, Map<String, String> headers) {
+        return FrameTemplate.compileKeepAlive(path, headers);
+    }
+
+    private CompletableFuture<Response> dispatch(ByteBuffer frame) {
+        return dispatch(frame, null);
+    }
+
+    private CompletableFuture<Response> dispatch(ByteBuffer frame, Set<PipelinedConnection> used) {
+        var future = new CompletableFuture<Response>();
+        PipelinedConnection connection;
+        try {
+            do {
+                // a false send raced with a connection failure, the pool hands out a fresh one on the next attempt
+                connection = connectionPool.acquire(used);
+                if (connection == null) {
+                    bufferPool.release(frame);
+                    return null;
+                }
+            } while (!connection.send(frame, future));
+            if (used != null) used.add(connection);
+        } catch (IOException e) {
+            bufferPool.release(frame);
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            bufferPool.release(frame);
+            return CompletableFuture.failedFuture(e);
+        }
+        var sentOn = connection;
+        future.orTimeout(config.requestTimeoutMs(), TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            // the response may still arrive and would be taken for the next one's, the stream can not be resynced
+            if (error instanceof TimeoutException) sentOn.close(new IOException("Connection reset after a request timed out"));
+        });
+        return future;
+    }
+
+    /**
+     * Requests currently written or waiting to be written on this client's connections.
+     */
+    public int outstanding() {
+        return connectionPool.outstanding();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        connectionPool.close(new ClosedChannelException());
+        for (var loop : loops) {
+            loop.close();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package client;
+
+import java.util.Map;
+
+/**
+ * One sub-request of a batch sent with {@link AsyncClient#sendBatch}.
+ */
+public record BatchRequest(String path, Map<String, String> headers, byte[] body) {
+    public BatchRequest(String path) {
+        this(path, Map.of(), null);
+    }
+}
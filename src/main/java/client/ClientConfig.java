@@ -0,0 +1,37 @@
+package client;
+
+import lombok.Builder;
+
+/**
+ * Settings for {@link AsyncClient}. Any value left at zero falls back to its default.
+ *
+ * @param connectionsPerEndpoint keep-alive connections opened (lazily) per endpoint
+ * @param maxPipelineDepth       requests in flight on one connection before it counts as full
+ * @param selectorThreads        threads driving reads and writes for all connections
+ * @param bufferSize             size of pooled (direct) encode and read buffers, larger frames use a one-off heap buffer
+ * @param maxPooledBuffers       buffers kept in the pool once released
+ * @param requestTimeoutMs       time after which a pending future completes with a TimeoutException, its connection
+ *                               is reset and the other requests on it fail
+ */
+@Builder
+public record ClientConfig(
+    int connectionsPerEndpoint,
+    int maxPipelineDepth,
+    int selectorThreads,
+    int bufferSize,
+    int maxPooledBuffers,
+    long requestTimeoutMs
+) {
+    public ClientConfig {
+        connectionsPerEndpoint = connectionsPerEndpoint > 0 ? connectionsPerEndpoint : 4;
+        maxPipelineDepth = maxPipelineDepth > 0 ? maxPipelineDepth : 64;
+        selectorThreads = selectorThreads > 0 ? selectorThreads : 1;
+        bufferSize = bufferSize > 0 ? bufferSize : 8192;
+        maxPooledBuffers = maxPooledBuffers > 0 ? maxPooledBuffers : 256;
+        requestTimeoutMs = requestTimeoutMs > 0 ? requestTimeoutMs : 30_000;
+    }
+
+    public static ClientConfig defaults() {
+        return ClientConfig.builder().build();
+    }
+}
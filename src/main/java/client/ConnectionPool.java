@@ -0,0 +1,93 @@
+package client;
+
+import server.SelectorLoop;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed number of lazily opened keep-alive connections to one endpoint. An idle connection is preferred, then a
+ * not yet opened (or broken) slot, then the least loaded connection still below the pipeline depth.
+ */
+final class ConnectionPool {
+    private final SocketAddress address;
+    private final ClientConfig config;
+    private final SelectorLoop[] loops;
+    private final ClientBufferPool bufferPool;
+    private final AtomicReferenceArray<PipelinedConnection> connections;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    ConnectionPool(SocketAddress address, ClientConfig config, SelectorLoop[] loops, ClientBufferPool bufferPool) {
+        this.address = address;
+        this.config = config;
+        this.loops = loops;
+        this.bufferPool = bufferPool;
+        this.connections = new AtomicReferenceArray<>(config.connectionsPerEndpoint());
+    }
+
+    SocketAddress address() {
+        return address;
+    }
+
+    PipelinedConnection acquire() throws IOException {
+        return acquire(null);
+    }
+
+    /**
+     * Like {@link #acquire()} but never one of the excluded connections, null instead of an exception when no other
+     * connection is below the pipeline depth.
+     */
+    PipelinedConnection acquire(Set<PipelinedConnection> excluded) throws IOException {
+        PipelinedConnection leastLoaded = null;
+        int freeSlot = -1;
+        for (int i = 0; i < connections.length(); i++) {
+            var connection = connections.get(i);
+            if (connection == null || connection.isClosed()) {
+                if (freeSlot == -1) freeSlot = i;
+                continue;
+            }
+            if (excluded != null && excluded.contains(connection)) continue;
+            if (connection.outstanding() == 0) return connection;
+            if (leastLoaded == null || connection.outstanding() < leastLoaded.outstanding()) leastLoaded = connection;
+        }
+
+        if (freeSlot != -1) {
+            return open(freeSlot);
+        }
+        if (leastLoaded == null || leastLoaded.outstanding() >= config.maxPipelineDepth()) {
+            if (excluded != null) return null;
+            throw new RejectedExecutionException("All connections to " + address + " are at max pipeline depth");
+        }
+        return leastLoaded;
+    }
+
+    private synchronized PipelinedConnection open(int slot) throws IOException {
+        var current = connections.get(slot);
+        if (current != null && !current.isClosed()) return current;
+
+        var loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        var connection = PipelinedConnection.open(address, loop, bufferPool);
+        connections.set(slot, connection);
+        return connection;
+    }
+
+    int outstanding() {
+        int total = 0;
+        for (int i = 0; i < connections.length(); i++) {
+            var connection = connections.get(i);
+            if (connection != null) total += connection.outstanding();
+        }
+        return total;
+    }
+
+    void close(Throwable cause) {
+        for (int i = 0; i < connections.length(); i++) {
+            var connection = connections.getAndSet(i, null);
+            if (connection != null) connection.close(cause);
+        }
+    }
+}
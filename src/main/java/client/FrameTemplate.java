@@ -0,0 +1,62 @@
+package client;
+
+import model.Headers;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Pre-encoded header block (path and headers) for requests that only differ in their body. The block is encoded
+ * once and every request just copies it after the two length fields and appends the body.
+ */
+public final class FrameTemplate {
+    private final byte[] headerBlock;
+
+    private FrameTemplate(byte[] headerBlock) {
+        this.headerBlock = headerBlock;
+    }
+
+    public static FrameTemplate compile(String path, Map<String, String> headers) {
+        return compile(path, headers, false);
+    }
+
+    /**
+     * Compiles a template that carries {@code Keep-Alive: true} unless the headers already decide it.
+     */
+    public static FrameTemplate compileKeepAlive(String path, Map<String, String> headers) {
+        return compile(path, headers, !headers.containsKey(Headers.KEEP_ALIVE));
+    }
+
+    private static FrameTemplate compile(String path, Map<String, String> headers, boolean keepAlive) {
+        if (path == null) throw new IllegalArgumentException("path cannot be null");
+        if (headers == null) throw new IllegalArgumentException("headers cannot be null");
+        var block = ByteBuffer.allocate(RequestEncoder.headerBlockSize(path, headers, keepAlive));
+        RequestEncoder.writeHeaderBlock(block, path, headers, keepAlive);
+        return new FrameTemplate(block.array());
+    }
+
+    public int encodedSize(int bodyLength) {
+        return 4 /*HeaderLength*/ + 4 /*BodyLength*/ + headerBlock.length + bodyLength;
+    }
+
+    /**
+     * Writes the frame at dst's position, the caller flips the buffer once it is done writing.
+     */
+    public void encode(ByteBuffer dst, byte[] body) {
+        int bodyLength = body == null ? 0 : body.length;
+        dst.putInt(headerBlock.length);
+        dst.putInt(bodyLength);
+        dst.put(headerBlock);
+        if (body != null) dst.put(body);
+    }
+
+    /**
+     * Same as {@link #encode(ByteBuffer, byte[])} with the body taken from body's position to its limit.
+     */
+    public void encode(ByteBuffer dst, ByteBuffer body) {
+        dst.putInt(headerBlock.length);
+        dst.putInt(body.remaining());
+        dst.put(headerBlock);
+        dst.put(body);
+    }
+}
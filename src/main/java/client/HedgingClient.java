@@ -0,0 +1,214 @@
+package client;
+
+import client.interfaces.IAsyncClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends each request to one endpoint and, if no response arrived within the configured percentile of recent
+ * latency, sends a duplicate to the next endpoint. Attempts on an {@link AsyncClient} always go out on a connection
+ * none of the request's earlier attempts used, so with a single endpoint a hedge does not queue behind the attempt
+ * it races; a hedge is skipped when there is no such connection. The first reply wins and the other attempts'
+ * futures are cancelled, which does not stop them: the server still handles them and their connections wait for
+ * (and discard) their responses. Failed attempts are retried on the next endpoint.
+ * Hedges and retries both draw from a shared {@link RetryBudget} so they cannot amplify load during an outage.
+ * Only use it for idempotent requests.
+ */
+@Slf4j
+public class HedgingClient implements IAsyncClient {
+    private final List<? extends IAsyncClient> endpoints;
+    private final HedgingConfig config;
+    private final LatencyTracker latencyTracker;
+    private final RetryBudget retryBudget;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong retriesSent = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    public HedgingClient(List<? extends IAsyncClient> endpoints, HedgingConfig config) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("At least one endpoint is required");
+        this.endpoints = List.copyOf(endpoints);
+        this.config = config;
+        this.retryBudget = new RetryBudget(config.budgetRatio(), config.minBudgetPerSecond());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("tiny-tcp-hedging").daemon().factory());
+        this.latencyTracker = new LatencyTracker(config.latencyWindow(), config.hedgePercentile(), scheduler);
+    }
+
+    /**
+     * Opens one {@link AsyncClient} per address.
+     */
+    public static HedgingClient connect(List<? extends SocketAddress> addresses, ClientConfig clientConfig, HedgingConfig config) throws IOException {
+        List<AsyncClient> clients = new ArrayList<>();
+        try {
+            for (var address : addresses) {
+                clients.add(new AsyncClient(address, clientConfig));
+            }
+        } catch (IOException e) {
+            clients.forEach(AsyncClient::close);
+            throw e;
+        }
+        return new HedgingClient(clients, config);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(String path, Map<String, String> headers, byte[] body) {
+        if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+        retryBudget.deposit();
+        var request = new HedgedRequest(path, headers, body, Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size()));
+        if (!request.launch()) {
+            request.result.completeExceptionally(new RejectedExecutionException("No connection below the pipeline depth"));
+            return request.result;
+        }
+        scheduleHedge(request, 1);
+        return request.result;
+    }
+
+    private void scheduleHedge(HedgedRequest request, int hedge) {
+        if (hedge > config.maxHedges()) return;
+        try {
+            scheduler.schedule(() -> hedge(request, hedge), hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed, the attempts already sent fail with their connections
+        }
+    }
+
+    private void hedge(HedgedRequest request, int hedge) {
+        if (request.result.isDone()) return;
+        if (!retryBudget.tryWithdraw()) {
+            budgetExhausted.incrementAndGet();
+            return;
+        }
+        if (!request.launch()) {
+            retryBudget.refund();
+            return;
+        }
+        hedgesSent.incrementAndGet();
+        scheduleHedge(request, hedge + 1);
+    }
+
+    private long hedgeDelayNanos() {
+        long minDelay = TimeUnit.MILLISECONDS.toNanos(config.minHedgeDelayMs());
+        return Math.max(minDelay, latencyTracker.percentileNanos());
+    }
+
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    public long getRetriesSent() {
+        return retriesSent.get();
+    }
+
+    public long getBudgetExhausted() {
+        return budgetExhausted.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        endpoints.forEach(IAsyncClient::close);
+    }
+
+    private final class HedgedRequest {
+        private final String path;
+        private final Map<String, String> headers;
+        private final byte[] body;
+        private final int firstEndpoint;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+
+        // guarded by this
+        private final List<CompletableFuture<Response>> attempts = new ArrayList<>(2);
+        private final Set<PipelinedConnection> connections = new HashSet<>(2); // used by the attempts so far
+        private int running = 0;
+        private int retries = 0;
+
+        HedgedRequest(String path, Map<String, String> headers, byte[] body, int firstEndpoint) {
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+            this.firstEndpoint = firstEndpoint;
+            // cancel the attempts that lost the race
+            result.whenComplete((response, ex) -> cancelAttempts());
+        }
+
+        /**
+         * Sends one more attempt, false if the request is done or there is no connection to send it on.
+         */
+        boolean launch() {
+            CompletableFuture<Response> attempt;
+            synchronized (this) {
+                if (result.isDone()) return false;
+                var endpoint = endpoints.get((firstEndpoint + attempts.size()) % endpoints.size());
+                attempt = endpoint instanceof AsyncClient client
+                    ? client.send(path, headers, body, connections)
+                    : endpoint.send(path, headers, body);
+                if (attempt == null) return false;
+                attempts.add(attempt);
+                running++;
+            }
+            long start = System.nanoTime();
+            attempt.whenComplete((response, ex) -> {
+                if (ex == null) {
+                    latencyTracker.record(System.nanoTime() - start);
+                    result.complete(response);
+                } else {
+                    onFailure(ex);
+                }
+            });
+            return true;
+        }
+
+        private void onFailure(Throwable ex) {
+            if (ex instanceof CancellationException || result.isDone()) return;
+
+            boolean retry;
+            boolean last;
+            synchronized (this) {
+                running--;
+                last = running == 0;
+                retry = retries < config.maxRetries();
+                if (retry && !retryBudget.tryWithdraw()) {
+                    budgetExhausted.incrementAndGet();
+                    retry = false;
+                }
+                if (retry) retries++;
+            }
+            if (retry) {
+                if (launch()) {
+                    retriesSent.incrementAndGet();
+                    return;
+                }
+                retryBudget.refund();
+            }
+            if (last) result.completeExceptionally(ex);
+        }
+
+        private void cancelAttempts() {
+            List<CompletableFuture<Response>> snapshot;
+            synchronized (this) {
+                snapshot = List.copyOf(attempts);
+            }
+            snapshot.forEach(attempt -> attempt.cancel(false));
+        }
+    }
+}
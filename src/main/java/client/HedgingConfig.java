@@ -0,0 +1,44 @@
+package client;
+
+import lombok.Builder;
+
+/**
+ * Settings for {@link HedgingClient}. Any value left unset falls back to its default, for maxHedges and maxRetries
+ * that is 1 and 0 turns hedging or retries off (e.g. for requests that must not be sent twice after a failure).
+ * The other values fall back to their default at zero.
+ *
+ * @param hedgePercentile      a hedge fires once an attempt is slower than this percentile of recent latency
+ * @param minHedgeDelayMs      lower bound for the hedge delay, also used until enough latencies were seen
+ * @param maxHedges            extra attempts sent for a slow request
+ * @param maxRetries           extra attempts sent after failed attempts
+ * @param budgetRatio          hedges and retries allowed per original request, e.g. 0.1 for 10%
+ * @param minBudgetPerSecond   hedges and retries always allowed per second regardless of traffic
+ * @param latencyWindow        number of recent latencies the percentile is computed over
+ */
+@Builder
+public record HedgingConfig(
+    double hedgePercentile,
+    long minHedgeDelayMs,
+    Integer maxHedges,
+    Integer maxRetries,
+    double budgetRatio,
+    int minBudgetPerSecond,
+    int latencyWindow
+) {
+    public HedgingConfig {
+        hedgePercentile = hedgePercentile > 0 ? hedgePercentile : 95;
+        minHedgeDelayMs = minHedgeDelayMs > 0 ? minHedgeDelayMs : 5;
+        maxHedges = maxHedges != null ? maxHedges : 1;
+        maxRetries = maxRetries != null ? maxRetries : 1;
+        if (maxHedges < 0 || maxRetries < 0) {
+            throw new IllegalArgumentException("maxHedges and maxRetries must not be negative: " + maxHedges + ", " + maxRetries);
+        }
+        budgetRatio = budgetRatio > 0 ? budgetRatio : 0.1;
+        minBudgetPerSecond = minBudgetPerSecond > 0 ? minBudgetPerSecond : 10;
+        latencyWindow = latencyWindow > 0 ? latencyWindow : 1024;
+    }
+
+    public static HedgingConfig defaults() {
+        return HedgingConfig.builder().build();
+    }
+}
@@ -0,0 +1,93 @@
+package client;
+
+/**
+ * Fixed-memory log-linear latency histogram (HdrHistogram style).
+ * Values below 128 are recorded exactly; above that every power of two is split into 64 sub-buckets,
+ * which keeps the relative error under ~1.6% for any recorded value.
+ * Not thread safe: record into one histogram per thread and {@link #add} them together when reporting.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 128
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1; // 64
+
+    private final long highestTrackableValue;
+    private final long[] counts;
+
+    private long totalCount = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    private double sum = 0;
+
+    public LatencyHistogram(long highestTrackableValue) {
+        if (highestTrackableValue < SUB_BUCKET_COUNT) {
+            throw new IllegalArgumentException("highestTrackableValue must be >= " + SUB_BUCKET_COUNT);
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new long[indexOf(highestTrackableValue) + 1];
+    }
+
+    public void recordValue(long value) {
+        long v = Math.clamp(value, 0, highestTrackableValue);
+        counts[indexOf(v)]++;
+        totalCount++;
+        sum += v;
+        if (v < min) min = v;
+        if (v > max) max = v;
+    }
+
+    public void add(LatencyHistogram other) {
+        if (other.counts.length > counts.length) {
+            throw new IllegalArgumentException("Cannot add a histogram with a larger trackable range");
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        if (other.totalCount > 0) {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0L;
+        long target = Math.max(1, (long) Math.ceil((percentile / 100.0) * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1); // value >> shift lands in [64, 127]
+        int subBucket = (int) (value >> shift) - SUB_BUCKET_HALF;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        int k = index - SUB_BUCKET_COUNT;
+        int shift = k / SUB_BUCKET_HALF + 1;
+        long subBucket = (k % SUB_BUCKET_HALF) + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
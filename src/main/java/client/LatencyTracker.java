@@ -0,0 +1,63 @@
+package client;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding window over the most recent response latencies. The percentile is recomputed at most once every
+ * {@code RECOMPUTE_EVERY} samples, on the given executor, so neither recording nor reading it sorts on the thread
+ * completing responses.
+ */
+final class LatencyTracker {
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicBoolean recomputeScheduled = new AtomicBoolean();
+    private final Executor executor;
+    private final double percentile;
+    private final long[] scratch; // only touched by recompute(), which runs on the executor one at a time
+    private volatile long cachedNanos = -1;
+
+    LatencyTracker(int windowSize, double percentile, Executor executor) {
+        this.samples = new AtomicLongArray(windowSize);
+        this.scratch = new long[windowSize];
+        this.percentile = percentile;
+        this.executor = executor;
+    }
+
+    void record(long latencyNanos) {
+        long n = recorded.getAndIncrement();
+        samples.set((int) (n % samples.length()), latencyNanos);
+        if (n % RECOMPUTE_EVERY == 0 && n > 0 && recomputeScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::recompute);
+            } catch (RejectedExecutionException e) {
+                // shut down
+            }
+        }
+    }
+
+    /**
+     * @return the tracked percentile of the window, or -1 until enough samples were seen
+     */
+    long percentileNanos() {
+        return cachedNanos;
+    }
+
+    private void recompute() {
+        recomputeScheduled.set(false);
+        int count = (int) Math.min(recorded.get(), samples.length());
+        if (count < RECOMPUTE_EVERY) return;
+        for (int i = 0; i < count; i++) {
+            scratch[i] = samples.get(i);
+        }
+        Arrays.sort(scratch, 0, count);
+        int idx = (int) Math.ceil((percentile / 100.0) * count) - 1;
+        cachedNanos = scratch[Math.clamp(idx, 0, count - 1)];
+    }
+}
@@ -0,0 +1,94 @@
+package client;
+
+import server.Utility;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Load test scenario, read from a JSON file (see resources/scenario.json).
+ * Stages run back to back; within a stage the send rate ramps linearly from the previous stage's target
+ * (0 for the first stage) to this stage's target, so a "hold" stage simply repeats the previous target.
+ */
+public record LoadScenario(
+    String name,
+    String host,
+    int port,
+    int connections,
+    long drainTimeoutMs,
+    List<Stage> stages,
+    List<RequestSpec> requests
+) {
+
+    public record Stage(long durationSeconds, double targetRps) {}
+
+    /**
+     * One entry of the weighted request mix. When bodySizeMax is positive a random printable ASCII body of
+     * [bodySizeMin, bodySizeMax] bytes is generated per request instead of sending the fixed body.
+     */
+    public record RequestSpec(
+        String path,
+        Map<String, String> headers,
+        String body,
+        int bodySizeMin,
+        int bodySizeMax,
+        int weight
+    ) {
+        public RequestSpec {
+            headers = headers == null ? Map.of() : Map.copyOf(headers);
+        }
+
+        public byte[] nextBody() {
+            if (bodySizeMax <= 0) {
+                return body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            }
+            var random = ThreadLocalRandom.current();
+            byte[] bytes = new byte[random.nextInt(Math.max(0, bodySizeMin), bodySizeMax + 1)];
+            for (int i = 0; i < bytes.length; i++) {
+                // printable ASCII range 32..126
+                bytes[i] = (byte) random.nextInt(32, 127);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Loads a scenario from the file system, falling back to the classpath (e.g. "/scenario.json").
+     */
+    public static LoadScenario load(String location) throws IOException {
+        var path = Path.of(location);
+        if (Files.isRegularFile(path)) {
+            try (var in = Files.newInputStream(path)) {
+                return read(in);
+            }
+        }
+        try (var in = LoadScenario.class.getResourceAsStream(location)) {
+            if (in == null) throw new FileNotFoundException("Scenario not found on file system or classpath: " + location);
+            return read(in);
+        }
+    }
+
+    private static LoadScenario read(InputStream in) throws IOException {
+        var scenario = Utility.OBJECT_MAPPER.readValue(in, LoadScenario.class);
+        scenario.validate();
+        return scenario;
+    }
+
+    private void validate() {
+        if (host == null || port <= 0) throw new IllegalArgumentException("Scenario needs a host and a port");
+        if (connections <= 0) throw new IllegalArgumentException("Scenario needs at least one connection");
+        if (stages == null || stages.isEmpty()) throw new IllegalArgumentException("Scenario needs at least one stage");
+        if (requests == null || requests.isEmpty()) throw new IllegalArgumentException("Scenario needs at least one request");
+        for (var spec : requests) {
+            if (spec.path() == null) throw new IllegalArgumentException("Every request needs a path");
+            if (spec.weight() <= 0) throw new IllegalArgumentException("Request weight must be positive: " + spec.path());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package client;
+
+import client.interfaces.IAsyncClient;
+import server.LoopbackTransport;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link AsyncClient} API over a {@link LoopbackTransport}: requests are encoded like on a socket and pipelined over
+ * one in-memory connection to an in-process server, so benchmarks and tests measure the server without the network.
+ * <pre>
+ * try (var transport = new LoopbackTransport(config, requestHandler); var client = new LoopbackClient(transport)) {
+ *     var response = client.send("/hello", Map.of(), body).get();
+ * }
+ * </pre>
+ * Futures complete on the server thread that wrote the response, keep callbacks short.
+ */
+public class LoopbackClient implements IAsyncClient, LoopbackTransport.Receiver {
+    private final LoopbackTransport.Pipe pipe;
+    private final ResponseAccumulator accumulator = new ResponseAccumulator(); // only touched by the writing server thread
+
+    // guarded by this
+    private final ArrayDeque<CompletableFuture<Response>> inFlight = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public LoopbackClient(LoopbackTransport transport) {
+        this.pipe = transport.connect(this);
+    }
+
+    @Override
+    public CompletableFuture<Response> send(String path, Map<String, String> headers, byte[] body) {
+        ByteBuffer frame;
+        try {
+            frame = ByteBuffer.allocate(RequestEncoder.encodedSizeKeepAlive(path, headers, body == null ? 0 : body.length));
+            RequestEncoder.encodeKeepAlive(frame, path, headers, body);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return dispatch(frame.flip());
+    }
+
+    /**
+     * See {@link AsyncClient#sendBatch(Map, List)}.
+     */
+    public CompletableFuture<List<Response>> sendBatch(Map<String, String> headers, List<BatchRequest> requests) {
+        ByteBuffer frame;
+        try {
+            frame = ByteBuffer.allocate(RequestEncoder.encodedBatchSize(headers, requests));
+            RequestEncoder.encodeBatch(frame, headers, requests);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return dispatch(frame.flip()).thenApply(AsyncClient::decodeBatch);
+    }
+
+    /**
+     * Sends a request built from a template, see {@link AsyncClient#template(String, Map)}.
+     */
+    public CompletableFuture<Response> send(FrameTemplate template, byte[] body) {
+        var frame = ByteBuffer.allocate(template.encodedSize(body == null ? 0 : body.length));
+        template.encode(frame, body);
+        return dispatch(frame.flip());
+    }
+
+    private CompletableFuture<Response> dispatch(ByteBuffer frame) {
+        var future = new CompletableFuture<Response>();
+        synchronized (this) {
+            if (closed) return CompletableFuture.failedFuture(new ClosedChannelException());
+            // queued in the order the frames are sent, the server answers in that order
+            inFlight.add(future);
+            try {
+                pipe.send(frame);
+            } catch (IOException e) {
+                inFlight.removeLast();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Requests sent but not answered yet.
+     */
+    public synchronized int outstanding() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void onBytes(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            try {
+                accumulator.append(bytes);
+            } catch (ProtocolException e) {
+                bytes.position(bytes.limit());
+                failPending(e);
+                pipe.close();
+                return;
+            }
+            if (!accumulator.isComplete()) continue;
+            var response = new Response(accumulator.getStatus(), accumulator.getBody());
+            accumulator.reset();
+            CompletableFuture<Response> future;
+            synchronized (this) {
+                future = inFlight.poll();
+            }
+            if (future != null) future.complete(response);
+        }
+    }
+
+    @Override
+    public void onClose() {
+        failPending(new IOException("Connection closed by server"));
+    }
+
+    private void failPending(IOException cause) {
+        List<CompletableFuture<Response>> pending;
+        synchronized (this) {
+            closed = true;
+            pending = new ArrayList<>(inFlight);
+            inFlight.clear();
+        }
+        pending.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        pipe.close();
+    }
+}
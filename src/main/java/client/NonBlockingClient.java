@@ -15,6 +15,8 @@ import java.util.Scanner;
 
 @Slf4j
 public class NonBlockingClient implements Client {
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+
     public void start(int port, Scanner scanner) {
         try (SocketChannel socket = SocketChannel.open()) {
             socket.configureBlocking(false);
@@ -79,7 +81,7 @@ public class NonBlockingClient implements Client {
 
     private void read(SelectionKey key) throws IOException {
         var socketChannel = (SocketChannel) key.channel();
-        var buffer = ByteBuffer.allocate(4096);
+        var buffer = readBuffer.clear();
         int bytesRead = socketChannel.read(buffer);
 
         if (bytesRead == -1) {
@@ -146,48 +148,4 @@ public class NonBlockingClient implements Client {
 
         return new ParsedRequest(path, headers, body);
     }
-
-    // Accumulates a response framed as: [status:int][len:int][bytes...]
-    private static final class ResponseAccumulator {
-        private final byte[] prefix = new byte[8];
-        private int prefixPos = 0;
-        private int status = -1;
-        private byte[] body;
-        private int bodyPos = 0;
-
-        void append(ByteBuffer src) {
-            // Fill 8-byte prefix first
-            if (prefixPos < 8 && src.hasRemaining()) {
-                int need = 8 - prefixPos;
-                int n = Math.min(need, src.remaining());
-                src.get(prefix, prefixPos, n);
-                prefixPos += n;
-                if (prefixPos >= 4 && status == -1) {
-                    status = ByteBuffer.wrap(prefix, 0, 4).getInt();
-                }
-                if (prefixPos == 8) {
-                    int bodyLen = ByteBuffer.wrap(prefix, 4, 4).getInt();
-                    body = new byte[bodyLen];
-                }
-            }
-            // Fill body
-            if (body != null && src.hasRemaining() && bodyPos < body.length) {
-                int n = Math.min(src.remaining(), body.length - bodyPos);
-                src.get(body, bodyPos, n);
-                bodyPos += n;
-            }
-        }
-
-        boolean isComplete() {
-            return body != null && bodyPos >= body.length;
-        }
-
-        int getStatus() {
-            return status;
-        }
-
-        byte[] getBody() {
-            return body != null ? body : new byte[0];
-        }
-    }
 }
@@ -0,0 +1,218 @@
+package client;
+
+import lombok.extern.slf4j.Slf4j;
+import server.SelectorLoop;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keep-alive connection with any number of requests in flight. Frames are written in the order send() was called
+ * and the server answers in that same order, so each decoded response completes the oldest pending future.
+ * Futures complete on the selector thread, use the *Async variants for anything heavier than a hand-off.
+ */
+@Slf4j
+final class PipelinedConnection implements SelectorLoop.Handler {
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final ClientBufferPool bufferPool;
+    private final ByteBuffer readBuffer;
+    private final ResponseAccumulator accumulator = new ResponseAccumulator();
+
+    // guarded by this
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<Response>> inFlight = new ArrayDeque<>();
+
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+    private volatile boolean closing = false; // close() was called, the failure is still queued on the loop
+    private SelectionKey key;
+    private boolean connected = false;
+
+    private PipelinedConnection(SocketChannel channel, SelectorLoop loop, ClientBufferPool bufferPool) {
+        this.channel = channel;
+        this.loop = loop;
+        this.bufferPool = bufferPool;
+        this.readBuffer = bufferPool.acquire(0);
+    }
+
+    static PipelinedConnection open(SocketAddress address, SelectorLoop loop, ClientBufferPool bufferPool) throws IOException {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        SocketChannel channel = unix ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            if (!unix) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connectedNow = channel.connect(address);
+            var connection = new PipelinedConnection(channel, loop, bufferPool);
+            loop.execute(() -> connection.register(connectedNow));
+            return connection;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    boolean isClosed() {
+        return closed || closing;
+    }
+
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Queues an encoded frame (ownership passes to the connection, it is released back to the pool once written).
+     *
+     * @return false if the connection is already closed, the caller should pick another one
+     */
+    boolean send(ByteBuffer frame, CompletableFuture<Response> future) {
+        synchronized (this) {
+            if (closed || closing) return false;
+            writeQueue.add(frame);
+            inFlight.add(future);
+            outstanding.incrementAndGet();
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+        return true;
+    }
+
+    private void register(boolean connectedNow) {
+        try {
+            if (closed) return;
+            key = channel.register(loop.selector(), connectedNow ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            if (connectedNow) {
+                connected = true;
+                flush();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) return;
+            if (key.isConnectable() && channel.finishConnect()) {
+                connected = true;
+                key.interestOps(SelectionKey.OP_READ);
+                flush();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void flush() {
+        if (!connected || closed) return; // flushed again once connected
+        flushScheduled.set(false);
+        try {
+            while (true) {
+                int count;
+                synchronized (this) {
+                    count = 0;
+                    for (ByteBuffer frame : writeQueue) {
+                        if (count == MAX_GATHER) break;
+                        gather[count++] = frame;
+                    }
+                }
+                if (count == 0) break;
+
+                channel.write(gather, 0, count);
+
+                int written = 0;
+                while (written < count && !gather[written].hasRemaining()) written++;
+                synchronized (this) {
+                    for (int i = 0; i < written; i++) {
+                        bufferPool.release(writeQueue.poll());
+                    }
+                }
+                if (written < count) {
+                    // socket buffer is full, wait for OP_WRITE
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void read() throws IOException {
+        int bytesRead = channel.read(readBuffer);
+        if (bytesRead == -1) {
+            fail(new IOException("Connection closed by server"));
+            return;
+        }
+
+        readBuffer.flip();
+        do {
+            accumulator.append(readBuffer);
+            if (accumulator.isComplete()) {
+                var response = new Response(accumulator.getStatus(), accumulator.getBody());
+                accumulator.reset();
+                CompletableFuture<Response> future;
+                synchronized (this) {
+                    future = inFlight.poll();
+                }
+                outstanding.decrementAndGet();
+                if (future != null) future.complete(response);
+            }
+        } while (readBuffer.hasRemaining());
+        readBuffer.clear();
+    }
+
+    void close(Throwable cause) {
+        synchronized (this) {
+            closing = true;
+        }
+        loop.execute(() -> fail(cause));
+    }
+
+    private void fail(Throwable cause) {
+        List<CompletableFuture<Response>> pending;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            pending = new ArrayList<>(inFlight);
+            inFlight.clear();
+            writeQueue.forEach(bufferPool::release);
+            writeQueue.clear();
+            outstanding.set(0);
+        }
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // ignore
+        }
+        bufferPool.release(readBuffer);
+        log.debug("Connection failed: {}", cause.getMessage());
+        pending.forEach(future -> future.completeExceptionally(cause));
+    }
+}
@@ -0,0 +1,156 @@
+package client;
+
+import lombok.extern.slf4j.Slf4j;
+import model.Headers;
+import server.PubSub;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Dedicated connection that receives messages pushed by the server's pub/sub instead of polling for them.
+ * subscribe() and unsubscribe() are answered like requests, push frames (status 0, body
+ * [TopicLength: 2 bytes][Topic][Message]) arriving in between go to the listener.
+ * <pre>
+ * try (var subscriber = new PushSubscriber(address, (topic, message) -> ...)) {
+ *     subscriber.subscribe("prices").get();
+ * }
+ * </pre>
+ * The listener runs on the subscriber's reader thread, a slow listener makes the server drop messages or the
+ * connection once its queue for this subscriber is full.
+ */
+@Slf4j
+public class PushSubscriber implements AutoCloseable {
+    private final SocketChannel channel;
+    private final BiConsumer<String, byte[]> listener;
+    private final Thread reader;
+
+    // guarded by this
+    private final ArrayDeque<CompletableFuture<Response>> inFlight = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public PushSubscriber(SocketAddress address, BiConsumer<String, byte[]> listener) throws IOException {
+        this.channel = address instanceof UnixDomainSocketAddress ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        try {
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.listener = listener;
+        this.reader = Thread.ofVirtual().name("push-subscriber").start(this::read);
+    }
+
+    public CompletableFuture<Response> subscribe(String topic) {
+        return send(PubSub.SUBSCRIBE_PATH, topic);
+    }
+
+    public CompletableFuture<Response> unsubscribe(String topic) {
+        return send(PubSub.UNSUBSCRIBE_PATH, topic);
+    }
+
+    private CompletableFuture<Response> send(String path, String topic) {
+        var headers = Map.of(Headers.TOPIC, topic);
+        ByteBuffer frame;
+        try {
+            frame = ByteBuffer.allocate(RequestEncoder.encodedSizeKeepAlive(path, headers, 0));
+            RequestEncoder.encodeKeepAlive(frame, path, headers, null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        frame.flip();
+        var future = new CompletableFuture<Response>();
+        synchronized (this) {
+            if (closed) return CompletableFuture.failedFuture(new IOException("Subscriber closed"));
+            // queued in the order the frames are sent, the server answers in that order
+            inFlight.add(future);
+            try {
+                while (frame.hasRemaining()) channel.write(frame);
+            } catch (IOException e) {
+                inFlight.removeLast();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return future;
+    }
+
+    private void read() {
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        var accumulator = new ResponseAccumulator();
+        IOException failure = null;
+        try {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    accumulator.append(buffer);
+                    if (!accumulator.isComplete()) continue;
+                    int status = accumulator.getStatus();
+                    byte[] body = accumulator.getBody();
+                    accumulator.reset();
+                    if (status == PubSub.PUSH_STATUS) {
+                        onPush(body);
+                        continue;
+                    }
+                    CompletableFuture<Response> future;
+                    synchronized (this) {
+                        future = inFlight.poll();
+                    }
+                    if (future != null) future.complete(new Response(status, body));
+                }
+                buffer.clear();
+            }
+            failure = new IOException("Connection closed by server");
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            List<CompletableFuture<Response>> pending;
+            synchronized (this) {
+                closed = true;
+                pending = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            for (var future : pending) future.completeExceptionally(failure);
+        }
+    }
+
+    private void onPush(byte[] body) {
+        var frame = ByteBuffer.wrap(body);
+        int topicLength = frame.getShort() & 0xFFFF;
+        var topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+        byte[] message = new byte[body.length - 2 - topicLength];
+        frame.get(2 + topicLength, message);
+        try {
+            listener.accept(topic, message);
+        } catch (RuntimeException e) {
+            log.warn("Push listener failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package client;
 
+import model.Headers;
+import server.RequestHandler;
+
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -11,68 +14,218 @@ import java.util.Map;
  * [PathLength: 2 bytes][Path bytes][HeaderCount: 2 bytes][Header1][Header2]...
  * Each header entry:
  * [KeyLength: 2 bytes][Key bytes][ValueLength: 2 bytes][Value bytes]
+ * <p>
+ * Strings are UTF-8 encoded straight into the destination buffer in a single pass, length fields are written as
+ * placeholders and patched afterwards, so encoding into a caller supplied (pooled, possibly direct) buffer does not
+ * allocate. For requests whose path and headers never change use a {@link FrameTemplate}.
  */
 public final class RequestEncoder {
+    private static final byte[] EMPTY = new byte[0];
 
     private RequestEncoder() {}
 
     public static ByteBuffer encode(String path, Map<String, String> headers, byte[] body) {
-        if (path == null) throw new IllegalArgumentException("path cannot be null");
-        if (headers == null) throw new IllegalArgumentException("headers cannot be null");
-        if (body == null) body = new byte[0];
+        if (body == null) body = EMPTY;
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(path, headers, body.length));
+        encode(buf, path, headers, body);
+        buf.flip();
+        return buf;
+    }
 
-        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
-        if (pathBytes.length > 0xFFFF) {
-            throw new IllegalArgumentException("path too long (max 65535 bytes in UTF-8)");
-        }
+    /**
+     * Full frame size for the given request, use it to pick a (pooled) destination buffer for {@link #encode(ByteBuffer, String, Map, byte[])}.
+     */
+    public static int encodedSize(String path, Map<String, String> headers, int bodyLength) {
+        validate(path, headers);
+        return 4 /*HeaderLength*/ + 4 /*BodyLength*/ + headerBlockSize(path, headers, false) + bodyLength;
+    }
 
-        // compute header bytes size
-        int headerBytesSize = getHeaderBytesSize(headers, pathBytes);
+    /**
+     * Writes the frame at dst's position, the caller flips the buffer once it is done writing.
+     *
+     * @throws java.nio.BufferOverflowException if dst has less than {@link #encodedSize} bytes remaining
+     */
+    public static void encode(ByteBuffer dst, String path, Map<String, String> headers, byte[] body) {
+        validate(path, headers);
+        writeFrame(dst, path, headers, false, body == null ? EMPTY : body);
+    }
 
-        // Full frame size
-        int frameSize = 4 /*HeaderLength*/ + 4 /*BodyLength*/ + headerBytesSize + body.length;
+    /**
+     * Same as {@link #encodedSize} for a request encoded with {@link #encodeKeepAlive}.
+     */
+    public static int encodedSizeKeepAlive(String path, Map<String, String> headers, int bodyLength) {
+        validate(path, headers);
+        return 4 + 4 + headerBlockSize(path, headers, addsKeepAlive(headers)) + bodyLength;
+    }
 
-        ByteBuffer buf = ByteBuffer.allocate(frameSize);
+    /**
+     * Like {@link #encode(ByteBuffer, String, Map, byte[])} but adds {@code Keep-Alive: true} unless the headers
+     * already decide it, saving callers from copying their header map just to keep the connection open.
+     */
+    public static void encodeKeepAlive(ByteBuffer dst, String path, Map<String, String> headers, byte[] body) {
+        validate(path, headers);
+        writeFrame(dst, path, headers, addsKeepAlive(headers), body == null ? EMPTY : body);
+    }
 
-        // Write lengths
-        buf.putInt(headerBytesSize);
-        buf.putInt(body.length);
+    /**
+     * Header block of a keep-alive request, for {@link AsyncClient#forward(ByteBuffer, ByteBuffer)}.
+     */
+    public static ByteBuffer encodeHeaderBlockKeepAlive(String path, Map<String, String> headers) {
+        validate(path, headers);
+        boolean keepAlive = addsKeepAlive(headers);
+        var dst = ByteBuffer.allocate(headerBlockSize(path, headers, keepAlive));
+        writeHeaderBlock(dst, path, headers, keepAlive);
+        return dst.flip();
+    }
 
-        // Write header bytes
-        buf.putShort((short) pathBytes.length);
-        buf.put(pathBytes);
-        buf.putShort((short) headers.size());
+    /**
+     * Size of a keep-alive batch frame carrying the given sub-requests, see {@link #encodeBatch}.
+     */
+    public static int encodedBatchSize(Map<String, String> headers, List<BatchRequest> requests) {
+        return encodedSizeKeepAlive(RequestHandler.BATCH_PATH, headers, batchBodySize(requests));
+    }
 
-        for (Map.Entry<String, String> e : headers.entrySet()) {
-            byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
-            byte[] v = e.getValue() == null ? new byte[0] : e.getValue().getBytes(StandardCharsets.UTF_8);
-            buf.putShort((short) k.length);
-            buf.put(k);
-            buf.putShort((short) v.length);
-            buf.put(v);
+    /**
+     * Writes a keep-alive frame for the server's batch path whose body is [Count: 4 bytes] followed by every
+     * sub-request as a complete frame. The headers apply to the batch itself (e.g. Priority, Client-Id).
+     */
+    public static void encodeBatch(ByteBuffer dst, Map<String, String> headers, List<BatchRequest> requests) {
+        validate(RequestHandler.BATCH_PATH, headers);
+        int bodyLength = batchBodySize(requests);
+        int start = dst.position();
+        try {
+            dst.position(start + 8);
+            writeHeaderBlock(dst, RequestHandler.BATCH_PATH, headers, addsKeepAlive(headers));
+            dst.putInt(start, dst.position() - start - 8);
+            dst.putInt(start + 4, bodyLength);
+            dst.putInt(requests.size());
+            for (var request : requests) {
+                writeFrame(dst, request.path(), request.headers(), false, request.body() == null ? EMPTY : request.body());
+            }
+        } catch (RuntimeException e) {
+            dst.position(start);
+            throw e;
         }
+    }
 
-        // Write body bytes
-        buf.put(body);
+    private static int batchBodySize(List<BatchRequest> requests) {
+        long size = 4;
+        for (var request : requests) {
+            size += encodedSize(request.path(), request.headers(), request.body() == null ? 0 : request.body().length);
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Batch too large: " + size + " bytes");
+        return (int) size;
+    }
 
-        buf.flip();
-        return buf;
+    private static boolean addsKeepAlive(Map<String, String> headers) {
+        return !headers.containsKey(Headers.KEEP_ALIVE);
     }
 
-    private static int getHeaderBytesSize(Map<String, String> headers, byte[] pathBytes) {
+    private static void validate(String path, Map<String, String> headers) {
+        if (path == null) throw new IllegalArgumentException("path cannot be null");
+        if (headers == null) throw new IllegalArgumentException("headers cannot be null");
+        if (headers.size() >= 0xFFFF) throw new IllegalArgumentException("too many headers (max 65534): " + headers.size());
+    }
+
+    private static void writeFrame(ByteBuffer dst, String path, Map<String, String> headers, boolean keepAlive, byte[] body) {
+        int start = dst.position();
+        try {
+            dst.position(start + 8); // lengths are patched once the header block is written
+            writeHeaderBlock(dst, path, headers, keepAlive);
+            int headerBytesSize = dst.position() - start - 8;
+            dst.putInt(start, headerBytesSize);
+            dst.putInt(start + 4, body.length);
+            dst.put(body);
+        } catch (RuntimeException e) {
+            // leave the buffer as it was so a pooled buffer can be reused
+            dst.position(start);
+            throw e;
+        }
+    }
+
+    static void writeHeaderBlock(ByteBuffer dst, String path, Map<String, String> headers, boolean keepAlive) {
+        putString(dst, path, "path");
+        dst.putShort((short) (headers.size() + (keepAlive ? 1 : 0)));
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            putString(dst, e.getKey(), "header key");
+            putString(dst, e.getValue(), "header value");
+        }
+        if (keepAlive) {
+            putString(dst, Headers.KEEP_ALIVE, "header key");
+            putString(dst, "true", "header value");
+        }
+    }
+
+    static int headerBlockSize(String path, Map<String, String> headers, boolean keepAlive) {
         int headerBytesSize = 0;
-        headerBytesSize += 2; // PathLength
-        headerBytesSize += pathBytes.length; // Path bytes
+        headerBytesSize += 2 + utf8Length(path, "path"); // PathLength + Path bytes
         headerBytesSize += 2; // HeaderCount
 
         // For each header: 2 + keyLen + 2 + valLen
         for (Map.Entry<String, String> e : headers.entrySet()) {
-            byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
-            byte[] v = e.getValue() == null ? new byte[0] : e.getValue().getBytes(StandardCharsets.UTF_8);
-            if (k.length > 0xFFFF) throw new IllegalArgumentException("header key too long: " + e.getKey());
-            if (v.length > 0xFFFF) throw new IllegalArgumentException("header value too long for key: " + e.getKey());
-            headerBytesSize += 2 + k.length + 2 + v.length;
+            headerBytesSize += 2 + utf8Length(e.getKey(), "header key") + 2 + utf8Length(e.getValue(), "header value");
+        }
+        if (keepAlive) {
+            headerBytesSize += 2 + Headers.KEEP_ALIVE.length() + 2 + "true".length();
         }
         return headerBytesSize;
     }
+
+    /**
+     * Writes [length: 2 bytes][UTF-8 bytes], encoding char by char (same replacement rules as String.getBytes).
+     */
+    private static void putString(ByteBuffer dst, String s, String what) {
+        int lengthPos = dst.position();
+        dst.position(lengthPos + 2);
+        if (s != null) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    dst.put((byte) c);
+                } else if (c < 0x800) {
+                    dst.put((byte) (0xC0 | (c >> 6)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        dst.put((byte) (0xF0 | (cp >> 18)));
+                        dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                        dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                        dst.put((byte) (0x80 | (cp & 0x3F)));
+                    } else {
+                        dst.put((byte) '?'); // unpaired surrogate
+                    }
+                } else {
+                    dst.put((byte) (0xE0 | (c >> 12)));
+                    dst.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+        int length = dst.position() - lengthPos - 2;
+        if (length > 0xFFFF) throw new IllegalArgumentException(what + " too long (max 65535 bytes in UTF-8): " + s);
+        dst.putShort(lengthPos, (short) length);
+    }
+
+    private static int utf8Length(String s, String what) {
+        if (s == null) return 0;
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1; // unpaired surrogate is replaced by '?'
+            } else {
+                length += 3;
+            }
+        }
+        if (length > 0xFFFF) throw new IllegalArgumentException(what + " too long (max 65535 bytes in UTF-8): " + s);
+        return length;
+    }
 }
@@ -0,0 +1,9 @@
+package client;
+
+import java.nio.charset.StandardCharsets;
+
+public record Response(int status, byte[] body) {
+    public String bodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package client;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Accumulates a response framed as: [status:int][len:int][bytes...]
+ * append() never reads past the end of the current frame, so bytes of the next pipelined response stay in the
+ * source buffer; call reset() before accumulating the next one. A negative body length means the stream is out of
+ * sync and fails with a ProtocolException, the connection can not be used anymore.
+ */
+final class ResponseAccumulator {
+    private final byte[] prefix = new byte[8];
+    private int prefixPos = 0;
+    private int status = -1;
+    private byte[] body;
+    private int bodyPos = 0;
+
+    void append(ByteBuffer src) throws ProtocolException {
+        // Fill 8-byte prefix first
+        if (prefixPos < 8 && src.hasRemaining()) {
+            int need = 8 - prefixPos;
+            int n = Math.min(need, src.remaining());
+            src.get(prefix, prefixPos, n);
+            prefixPos += n;
+            if (prefixPos >= 4 && status == -1) {
+                status = ByteBuffer.wrap(prefix, 0, 4).getInt();
+            }
+            if (prefixPos == 8) {
+                int bodyLen = ByteBuffer.wrap(prefix, 4, 4).getInt();
+                if (bodyLen < 0) throw new ProtocolException("Invalid response length " + bodyLen);
+                body = new byte[bodyLen];
+            }
+        }
+        // Fill body
+        if (body != null && src.hasRemaining() && bodyPos < body.length) {
+            int n = Math.min(src.remaining(), body.length - bodyPos);
+            src.get(body, bodyPos, n);
+            bodyPos += n;
+        }
+    }
+
+    boolean isComplete() {
+        return body != null && bodyPos >= body.length;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    byte[] getBody() {
+        return body != null ? body : new byte[0];
+    }
+
+    void reset() {
+        prefixPos = 0;
+        status = -1;
+        body = null;
+        bodyPos = 0;
+    }
+}
@@ -0,0 +1,58 @@
+package client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting hedges and retries to a fraction of the original traffic. Every request deposits
+ * {@code ratio} tokens, every extra attempt withdraws one, and a floor of {@code minPerSecond} tokens keeps
+ * low-traffic clients able to hedge at all. During an outage the budget drains and extra attempts stop instead of
+ * multiplying the load on an already struggling server.
+ */
+final class RetryBudget {
+    private static final long SCALE = 1000; // tokens are kept in thousandths
+
+    private final long depositPerRequest;
+    private final long maxBalance;
+    private final long refillPerSecond;
+    private final AtomicLong balance;
+    private final AtomicLong lastRefillNanos = new AtomicLong(System.nanoTime());
+
+    RetryBudget(double ratio, int minPerSecond) {
+        this.depositPerRequest = (long) (ratio * SCALE);
+        this.refillPerSecond = minPerSecond * SCALE;
+        this.maxBalance = Math.max(refillPerSecond, 10 * SCALE) * 10;
+        this.balance = new AtomicLong(refillPerSecond);
+    }
+
+    void deposit() {
+        add(depositPerRequest);
+    }
+
+    /**
+     * Gives back a withdrawn token whose attempt could not be sent.
+     */
+    void refund() {
+        add(SCALE);
+    }
+
+    boolean tryWithdraw() {
+        refill();
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) return false;
+            if (balance.compareAndSet(current, current - SCALE)) return true;
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long last = lastRefillNanos.get();
+        long elapsed = now - last;
+        if (elapsed < 10_000_000L || !lastRefillNanos.compareAndSet(last, now)) return; // at most every 10ms
+        add(refillPerSecond * elapsed / 1_000_000_000L);
+    }
+
+    private void add(long tokens) {
+        balance.accumulateAndGet(tokens, (current, delta) -> Math.min(maxBalance, current + delta));
+    }
+}
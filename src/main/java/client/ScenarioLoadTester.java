@@ -1,183 +1,244 @@
 package client;
 
-import lombok.Builder;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import server.Utility;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * Scenario-based load test. Fill the REQUESTS list with the exact traffic you want to generate.
- * Each RequestSpec is sent 'repeat' times. All requests are distributed across 'concurrency' keep-alive connections.
+ * Open-loop load generator. A pacer thread computes the intended send time of every request from the scenario's
+ * rate stages and hands them to one worker per keep-alive connection. Latency is measured from the intended send
+ * time rather than from when a worker got round to sending, so queueing delay caused by a slow server shows up in
+ * the percentiles instead of silently lowering the offered load (coordinated omission).
+ * <p>
+ * Usage: {@code ScenarioLoadTester [scenario.json] [report.json]}. The scenario defaults to /scenario.json on the
+ * classpath and the JSON report is printed to stdout when no report path is given.
  * Response frame expected: [status:int][len:int][body]
- * NOTE: GPT GENERATED CODE
  */
 @Slf4j
 public class ScenarioLoadTester {
-
-    // === Fill this list ===
-    // Example entries are commented out. Add your own paths, headers and payloads.
-    private static final List<RequestSpec> REQUESTS = List.of(
-        RequestSpec.builder()
-            .path("/hello")
-            .headers(Map.of("Keep-Alive", "true"))
-            .body(randomAsciiBytes(0, 1500))
-            .repeat(10000)
-            .build(),
-        RequestSpec.builder()
-            .path("/delay")
-            .headers(Map.of("Keep-Alive", "true", "Delay", "10"))
-            .body("ping".getBytes(StandardCharsets.UTF_8))
-            .repeat(10000)
-            .build()
-    );
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final long RECONNECT_BACKOFF_MS = 50;
+    private static final int FRAME_BUFFER_SIZE = 64 * 1024;
+
+    private final LoadScenario scenario;
+    private final WeightedMix mix;
+    private final BlockingQueue<Long> schedule = new LinkedBlockingQueue<>();
+    private volatile boolean pacerDone = false;
+    private volatile long drainDeadlineNanos = Long.MAX_VALUE;
+
+    public ScenarioLoadTester(LoadScenario scenario) {
+        this.scenario = scenario;
+        this.mix = new WeightedMix(scenario.requests());
+    }
 
     public static void main(String[] args) throws Exception {
-        Config cfg = new Config("127.0.0.1", 9998, 1000);
-        if (REQUESTS.isEmpty()) {
-            log.info("REQUESTS list is empty. Please add RequestSpec entries in ScenarioLoadTester.");
-            return;
-        }
-
-        // Flatten scenario to a concurrent task queue
-        Queue<RequestSpec> queue = new ConcurrentLinkedQueue<>();
-        for (RequestSpec spec : REQUESTS) {
-            for (int i = 0; i < spec.repeat; i++) {
-                queue.add(spec);
-            }
+        var scenario = LoadScenario.load(args.length > 0 ? args[0] : "/scenario.json");
+        var report = new ScenarioLoadTester(scenario).run();
+
+        log.info("=== Scenario Load Test Results: {} ===", report.scenario());
+        log.info("Planned:       {}", report.plannedRequests());
+        log.info("Completed:     {}", report.completedRequests());
+        log.info("Failed:        {}", report.failedRequests());
+        log.info("Not sent:      {}", report.notSentRequests());
+        log.info("Throughput:    {} req/s", String.format("%.2f", report.achievedRps()));
+        log.info("Status counts: {}", report.statusCounts());
+        log.info("Latency (us):  {}", report.latencyMicros());
+        log.info("Service (us):  {}", report.serviceTimeMicros());
+
+        var writer = Utility.OBJECT_MAPPER.writerWithDefaultPrettyPrinter();
+        if (args.length > 1) {
+            writer.writeValue(Path.of(args[1]).toFile(), report);
+        } else {
+            System.out.println(writer.writeValueAsString(report));
         }
-        int totalPlanned = queue.size();
+    }
 
-        ExecutorService pool = Executors.newFixedThreadPool(cfg.concurrency);
+    public Report run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(scenario.connections());
         List<Future<Result>> futures = new ArrayList<>();
-
-        Instant t0 = Instant.now();
-        for (int i = 0; i < cfg.concurrency; i++) {
-            futures.add(pool.submit(new Worker(cfg, queue)));
+        for (int i = 0; i < scenario.connections(); i++) {
+            futures.add(pool.submit(new Worker()));
         }
 
-        long ok = 0, notFound = 0, err = 0;
-        List<Long> latencies = new ArrayList<>();
+        var startedAt = Instant.now();
+        long t0 = System.nanoTime();
+        long planned = pace(t0);
+        drainDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scenario.drainTimeoutMs());
+        pacerDone = true;
+
+        var total = new Result();
         for (Future<Result> f : futures) {
-            Result r = f.get();
-            ok += r.ok;
-            notFound += r.notFound;
-            err += r.err;
-            latencies.addAll(r.latenciesNanos);
+            try {
+                total.merge(f.get());
+            } catch (Exception e) {
+                log.error("Worker failed: {}", e.getMessage(), e);
+            }
         }
         pool.shutdown();
         pool.awaitTermination(30, TimeUnit.SECONDS);
-        Instant t1 = Instant.now();
-
-        long durationMs = Duration.between(t0, t1).toMillis();
-        double rps = durationMs == 0 ? totalPlanned : (totalPlanned * 1000.0) / durationMs;
-
-        Collections.sort(latencies);
-        long p50 = pct(latencies, 50);
-        long p95 = pct(latencies, 95);
-        long p99 = pct(latencies, 99);
-        long min = latencies.isEmpty() ? 0 : latencies.get(0);
-        long max = latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1);
-
-        log.info("=== Scenario Load Test Results ===");
-        log.info("Total planned: {}", totalPlanned);
-        log.info("Completed:     {}", (ok + notFound + err));
-        log.info("Duration:      {} ms", durationMs);
-        log.info("Throughput:    {} req/s", String.format("%.2f", rps));
-        log.info("Status 200:    {}", ok);
-        log.info("Status 404:    {}", notFound);
-        log.info("Status 500+:   {}", err);
-        log.info("Latency (ms):  min={} p50={} p95={} p99={} max={}",
-            TimeUnit.NANOSECONDS.toMillis(min),
-            TimeUnit.NANOSECONDS.toMillis(p50),
-            TimeUnit.NANOSECONDS.toMillis(p95),
-            TimeUnit.NANOSECONDS.toMillis(p99),
-            TimeUnit.NANOSECONDS.toMillis(max));
+        long elapsedNanos = System.nanoTime() - t0;
+
+        double rps = elapsedNanos == 0 ? 0 : total.completed * 1_000_000_000.0 / elapsedNanos;
+        var statusCounts = new TreeMap<String, Long>();
+        total.statusCounts.forEach((status, count) -> statusCounts.put(String.valueOf(status), count));
+        return new Report(
+            scenario.name(),
+            startedAt.toString(),
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            planned,
+            total.completed,
+            total.failed,
+            total.notSent,
+            rps,
+            statusCounts,
+            Percentiles.of(total.latency),
+            Percentiles.of(total.serviceTime)
+        );
     }
 
-    private static long pct(List<Long> sorted, int p) {
-        if (sorted.isEmpty()) return 0L;
-        int idx = (int) Math.ceil((p / 100.0) * sorted.size()) - 1;
-        idx = Math.clamp(idx, 0, sorted.size() - 1);
-        return sorted.get(idx);
+    /**
+     * Emits the intended send time of every request. Within a stage the rate ramps linearly from {@code from} to
+     * {@code to}, so the number of requests due by time t is N(t) = from * t + (to - from) * t^2 / (2 * D);
+     * solving N(t) = k for t gives the k-th send time without accumulating per-request rounding error.
+     *
+     * @return number of requests scheduled
+     */
+    private long pace(long t0) {
+        long planned = 0;
+        long stageStart = t0;
+        double from = 0;
+        for (var stage : scenario.stages()) {
+            double to = stage.targetRps();
+            double durationSeconds = stage.durationSeconds();
+            double slope = (to - from) / durationSeconds;
+            for (long k = 1; ; k++) {
+                double t = slope == 0
+                    ? (from == 0 ? Double.POSITIVE_INFINITY : k / from)
+                    : (-from + Math.sqrt(from * from + 2 * slope * k)) / slope;
+                if (!(t < durationSeconds)) break;
+
+                long intended = stageStart + (long) (t * 1_000_000_000L);
+                long wait = intended - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                schedule.add(intended);
+                planned++;
+            }
+            stageStart += stage.durationSeconds() * 1_000_000_000L;
+            long wait = stageStart - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            from = to;
+        }
+        return planned;
     }
 
-    private static final class Worker implements Callable<Result> {
-        private final Config cfg;
-        private final Queue<RequestSpec> queue;
-
-        Worker(Config cfg, Queue<RequestSpec> queue) {
-            this.cfg = cfg;
-            this.queue = queue;
-        }
+    private final class Worker implements Callable<Result> {
+        private final Result result = new Result();
+        private final ByteBuffer frameBuffer = ByteBuffer.allocateDirect(FRAME_BUFFER_SIZE);
+        private final ByteBuffer prefix = ByteBuffer.allocateDirect(8);
+        private final ByteBuffer drain = ByteBuffer.allocateDirect(FRAME_BUFFER_SIZE);
+        private SocketChannel channel;
 
         @Override
-        public Result call() {
-            List<Long> latencies = new ArrayList<>();
-            long ok = 0, notFound = 0, err = 0;
-
-            try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(cfg.host, cfg.port))) {
-                ch.configureBlocking(true);
-
+        public Result call() throws InterruptedException {
+            try {
                 while (true) {
-                    RequestSpec spec = queue.poll();
-                    if (spec == null) break; // no more work
-
-                    ByteBuffer frame = RequestEncoder.encode(spec.path, spec.headers, spec.body);
-                    long s = System.nanoTime();
-                    writeFully(ch, frame);
-                    Response r = readResponse(ch);
-                    long e = System.nanoTime();
-                    latencies.add(e - s);
-
-                    if (r.status >= 200 && r.status < 300) ok++;
-                    else if (r.status == 404) notFound++;
-                    else err++;
+                    Long intended = schedule.poll(100, TimeUnit.MILLISECONDS);
+                    if (intended == null) {
+                        if (pacerDone) break;
+                        continue;
+                    }
+                    if (System.nanoTime() > drainDeadlineNanos) {
+                        result.notSent++;
+                        continue;
+                    }
+                    send(intended, mix.next());
                 }
+            } finally {
+                closeChannel();
+            }
+            return result;
+        }
 
+        private void send(long intended, int specIndex) throws InterruptedException {
+            var spec = scenario.requests().get(specIndex);
+            try {
+                if (channel == null) {
+                    channel = SocketChannel.open(new InetSocketAddress(scenario.host(), scenario.port()));
+                    channel.configureBlocking(true);
+                }
+                ByteBuffer frame = encode(mix.template(specIndex), spec.nextBody());
+                long sent = System.nanoTime();
+                writeFully(channel, frame);
+                int status = readResponse(channel);
+                long end = System.nanoTime();
+
+                result.latency.recordValue(end - intended);
+                result.serviceTime.recordValue(end - sent);
+                result.statusCounts.merge(status, 1L, Long::sum);
+                result.completed++;
             } catch (IOException e) {
-                // connection failure: remaining tasks will be picked by other workers
+                // count the request as failed and reconnect on the next one, never drop work silently
+                log.debug("Request to {} failed: {}", spec.path(), e.getMessage());
+                result.failed++;
+                closeChannel();
+                Thread.sleep(RECONNECT_BACKOFF_MS);
+            }
+        }
+
+        private void closeChannel() {
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // ignore
             }
+            channel = null;
+        }
 
-            return new Result(ok, notFound, err, latencies);
+        private ByteBuffer encode(FrameTemplate template, byte[] body) {
+            int size = template.encodedSize(body.length);
+            ByteBuffer frame = size <= frameBuffer.capacity() ? frameBuffer.clear() : ByteBuffer.allocate(size);
+            template.encode(frame, body);
+            return frame.flip();
         }
 
         private static void writeFully(SocketChannel ch, ByteBuffer buf) throws IOException {
             while (buf.hasRemaining()) ch.write(buf);
         }
 
-        private static Response readResponse(SocketChannel ch) throws IOException {
-            ByteBuffer prefix = ByteBuffer.allocate(8);
-            readFully(ch, prefix);
+        private int readResponse(SocketChannel ch) throws IOException {
+            readFully(ch, prefix.clear());
             prefix.flip();
             int status = prefix.getInt();
             int len = prefix.getInt();
 
-            ByteBuffer body = ByteBuffer.allocate(len);
-            readFully(ch, body);
-            body.flip();
-            byte[] bytes = new byte[len];
-            body.get(bytes);
-            return new Response(status, bytes);
+            // the body is not inspected, read it into a reused buffer and discard it
+            while (len > 0) {
+                drain.clear().limit(Math.min(len, drain.capacity()));
+                readFully(ch, drain);
+                len -= drain.position();
+            }
+            return status;
         }
 
         private static void readFully(SocketChannel ch, ByteBuffer buf) throws IOException {
@@ -188,43 +249,90 @@ public class ScenarioLoadTester {
         }
     }
 
-    @Value
-    private static class Config {
-        String host;
-        int port;
-        int concurrency;
-    }
+    /**
+     * Weighted pick over the scenario's requests, each with a precompiled frame template since only bodies vary.
+     * Templates are keep-alive unless the scenario sets the header, workers send all their requests on one connection.
+     */
+    private static final class WeightedMix {
+        private final FrameTemplate[] templates;
+        private final int[] cumulativeWeights;
+
+        WeightedMix(List<LoadScenario.RequestSpec> specs) {
+            this.templates = new FrameTemplate[specs.size()];
+            this.cumulativeWeights = new int[specs.size()];
+            int total = 0;
+            for (int i = 0; i < specs.size(); i++) {
+                var spec = specs.get(i);
+                templates[i] = FrameTemplate.compileKeepAlive(spec.path(), spec.headers());
+                total += spec.weight();
+                cumulativeWeights[i] = total;
+            }
+        }
 
-    @Value
-    @Builder
-    public static class RequestSpec {
-        String path;
-        Map<String, String> headers;
-        byte[] body;
-        int repeat;
+        int next() {
+            int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int idx = Arrays.binarySearch(cumulativeWeights, pick + 1);
+            return idx >= 0 ? idx : -idx - 1;
+        }
 
-        public RequestSpec(String path, Map<String, String> headers, byte[] body, int repeat) {
-            this.path = Objects.requireNonNull(path);
-            this.headers = Objects.requireNonNull(headers);
-            this.body = body == null ? new byte[0] : body;
-            this.repeat = Math.max(1, repeat);
+        FrameTemplate template(int index) {
+            return templates[index];
         }
     }
 
-    private record Response(int status, byte[] body) {
+    private static final class Result {
+        final LatencyHistogram latency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+        final LatencyHistogram serviceTime = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+        final Map<Integer, Long> statusCounts = new TreeMap<>();
+        long completed = 0;
+        long failed = 0;
+        long notSent = 0;
+
+        void merge(Result other) {
+            latency.add(other.latency);
+            serviceTime.add(other.serviceTime);
+            other.statusCounts.forEach((status, count) -> statusCounts.merge(status, count, Long::sum));
+            completed += other.completed;
+            failed += other.failed;
+            notSent += other.notSent;
+        }
     }
 
-    private record Result(long ok, long notFound, long err, List<Long> latenciesNanos) {
-    }
+    public record Percentiles(long min, long p50, long p90, long p99, long p999, long p9999, long max, double mean) {
+        static Percentiles of(LatencyHistogram histogram) {
+            return new Percentiles(
+                micros(histogram.getMin()),
+                micros(histogram.getValueAtPercentile(50)),
+                micros(histogram.getValueAtPercentile(90)),
+                micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getValueAtPercentile(99.99)),
+                micros(histogram.getMax()),
+                histogram.getMean() / 1000.0
+            );
+        }
 
-    private static byte[] randomAsciiBytes(int minLen, int maxLen) {
-        int len = ThreadLocalRandom.current().nextInt(minLen, maxLen + 1);
-        byte[] bytes = new byte[len];
-        for (int i = 0; i < len; i++) {
-            // printable ASCII range 32..126
-            bytes[i] = (byte) ThreadLocalRandom.current().nextInt(32, 127);
+        private static long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
         }
-        return bytes;
     }
 
+    /**
+     * Machine-readable summary of a run. latencyMicros is measured from the intended send time (corrected for
+     * coordinated omission), serviceTimeMicros from the actual write, so the gap between them is queueing delay.
+     */
+    public record Report(
+        String scenario,
+        String startedAt,
+        long durationMs,
+        long plannedRequests,
+        long completedRequests,
+        long failedRequests,
+        long notSentRequests,
+        double achievedRps,
+        Map<String, Long> statusCounts,
+        Percentiles latencyMicros,
+        Percentiles serviceTimeMicros
+    ) {
+    }
 }
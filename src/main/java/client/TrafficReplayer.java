@@ -0,0 +1,142 @@
+package client;
+
+import lombok.extern.slf4j.Slf4j;
+import model.Headers;
+import server.CaptureReader;
+import server.RequestParser;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays traffic captured by the server (see {@code captureProperties}) against a server. Segments
+ * {@code <capture>-00000.bin}, {@code <capture>-00001.bin}, ... are read in order with a {@link CaptureReader} and
+ * every recorded frame is sent again through an {@link AsyncClient} at its original offset from the first one of its
+ * capture, divided by speed (2 replays twice as fast, 0 as fast as the pipeline allows). Frames are decoded by
+ * the server's {@link RequestParser} and encoded again as keep-alive requests, so captured {@code Keep-Alive}
+ * headers do not close the replaying connections.
+ * <p>
+ * Usage: {@code TrafficReplayer <capture> [host:port | path/to/socket] [speed]}, e.g.
+ * {@code TrafficReplayer captures/capture-9998 localhost:9998 1}.
+ */
+@Slf4j
+public class TrafficReplayer {
+    private final AsyncClient client;
+    private final RequestParser parser = new RequestParser();
+    private final double speed;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Map<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+    private final AtomicLong failed = new AtomicLong();
+    private long sent = 0;
+    private long lateNanos = 0; // how far sends fell behind their scheduled time in total
+    private long firstOffsetNanos = -1;
+    private long startNanos;
+
+    public TrafficReplayer(AsyncClient client, ClientConfig config, double speed) {
+        this.client = client;
+        this.speed = speed;
+        this.maxInFlight = config.connectionsPerEndpoint() * config.maxPipelineDepth();
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TrafficReplayer <capture> [host:port | path/to/socket] [speed]");
+            System.exit(1);
+        }
+        var capture = Path.of(args[0]);
+        var address = parseAddress(args.length > 1 ? args[1] : "localhost:9998");
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+        var config = ClientConfig.defaults();
+        try (var client = new AsyncClient(address, config)) {
+            var replayer = new TrafficReplayer(client, config, speed);
+            long t0 = System.nanoTime();
+            replayer.replay(capture);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+
+            log.info("=== Replay of {} ===", capture);
+            log.info("Sent:          {}", replayer.sent);
+            log.info("Failed:        {}", replayer.failed.get());
+            log.info("Elapsed:       {} ms", elapsedMs);
+            log.info("Mean lag:      {} us", replayer.sent == 0 ? 0 : replayer.lateNanos / replayer.sent / 1000);
+            log.info("Status counts: {}", new TreeMap<>(replayer.statusCounts));
+        }
+    }
+
+    private static SocketAddress parseAddress(String target) {
+        int colon = target.lastIndexOf(':');
+        if (colon < 0) return UnixDomainSocketAddress.of(target);
+        return new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+    }
+
+    /**
+     * Sends every frame of the capture and waits for all responses.
+     */
+    public void replay(Path capture) throws IOException, InterruptedException {
+        startNanos = System.nanoTime();
+        var reader = new CaptureReader(capture);
+        Path segment = null;
+        long captureStart = 0;
+        ByteBuffer frame;
+        while ((frame = reader.next()) != null) {
+            if (reader.segment() != segment) {
+                segment = reader.segment();
+                log.info("Replaying {}", segment);
+            }
+            if (reader.captureStartEpochMillis() != captureStart) {
+                // segments of the next server run, its offsets start over
+                captureStart = reader.captureStartEpochMillis();
+                firstOffsetNanos = -1;
+                startNanos = System.nanoTime();
+            }
+            pace(reader.offsetNanos());
+            send(frame);
+        }
+        // every permit back means every response arrived
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    private void pace(long offsetNanos) {
+        if (firstOffsetNanos < 0) firstOffsetNanos = offsetNanos;
+        if (speed <= 0) return;
+        long due = startNanos + (long) ((offsetNanos - firstOffsetNanos) / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        lateNanos -= wait;
+    }
+
+    private void send(ByteBuffer frame) throws InterruptedException {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        var request = parser.parseFrame(ByteBuffer.wrap(bytes));
+        var headers = request.headers();
+        headers.remove(Headers.KEEP_ALIVE);
+
+        inFlight.acquire();
+        sent++;
+        client.send(request.path(), headers, request.requestBody()).whenComplete((response, error) -> {
+            if (error != null) {
+                failed.incrementAndGet();
+            } else {
+                statusCounts.computeIfAbsent(response.status(), s -> new AtomicLong()).incrementAndGet();
+            }
+            inFlight.release();
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package client.interfaces;
+
+import client.Response;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface IAsyncClient extends AutoCloseable {
+    CompletableFuture<Response> send(String path, Map<String, String> headers, byte[] body);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,120 @@
+package demo_server;
+
+import client.RequestEncoder;
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.InternalServerResponse;
+import server.AsyncServer;
+import server.BoundedVirtualThreadExecutor;
+import server.ByteBufferPool;
+import server.RequestHandler;
+import server.RequestParser;
+import server.RequestRouteConfiguration;
+import server.Utility;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Measures heap allocated by the server per request. An in-process server answers a route that returns a prebuilt
+ * response, a single client thread pipelines pre-encoded frames over one keep-alive connection without allocating,
+ * and the bytes allocated by all threads (minus the client's own) are divided by the number of requests.
+ * <p>
+ * Usage: {@code AllocationBenchmark [requests] [pipelineDepth] [port]}
+ */
+@Slf4j
+public class AllocationBenchmark {
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9990;
+
+        ApplicationConfig config;
+        try (var in = AllocationBenchmark.class.getResourceAsStream("/application.json")) {
+            config = Utility.OBJECT_MAPPER.readValue(in, ApplicationConfig.class).withPort(port);
+        }
+        ByteBufferPool.initialise(config);
+
+        var response = CompletableFuture.completedFuture(new InternalServerResponse(200, "pong".getBytes(StandardCharsets.UTF_8)));
+        var routes = new RequestRouteConfiguration();
+        routes.addHandler("/ping", request -> response);
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        try (var server = new AsyncServer(config, new RequestHandler(
+            new RequestParser(), routes, new BoundedVirtualThreadExecutor(config.serverProperties().maxWorkerThreads())));
+             var channel = SocketChannel.open()) {
+            server.start();
+            channel.connect(new InetSocketAddress("127.0.0.1", port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            var driver = new Driver(channel, depth);
+
+            driver.run(requests / 5); // warm-up
+            long before = threads.getTotalThreadAllocatedBytes();
+            long clientBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            driver.run(requests);
+            long elapsed = System.nanoTime() - start;
+            long clientBytes = threads.getCurrentThreadAllocatedBytes() - clientBefore;
+            long serverBytes = threads.getTotalThreadAllocatedBytes() - before - clientBytes;
+
+            log.info("Requests:          {}", requests);
+            log.info("Pipeline depth:    {}", depth);
+            log.info("Throughput:        {} req/s", String.format("%.0f", requests * 1e9 / elapsed));
+            log.info("Server allocation: {} bytes/request", String.format("%.1f", (double) serverBytes / requests));
+            log.info("Client allocation: {} bytes/request", String.format("%.1f", (double) clientBytes / requests));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Writes batches of depth frames and reads the matching responses, all into preallocated buffers.
+     */
+    private static final class Driver {
+        private final SocketChannel channel;
+        private final int depth;
+        private final ByteBuffer frames;
+        private final ByteBuffer responses = ByteBuffer.allocateDirect(64 * 1024);
+
+        Driver(SocketChannel channel, int depth) {
+            this.channel = channel;
+            this.depth = depth;
+            var frame = RequestEncoder.encode("/ping", Map.of("Keep-Alive", "true"), new byte[0]);
+            this.frames = ByteBuffer.allocateDirect(frame.remaining() * depth);
+            for (int i = 0; i < depth; i++) {
+                frames.put(frame.duplicate());
+            }
+            frames.flip();
+        }
+
+        void run(int requests) throws IOException {
+            responses.clear();
+            for (int sent = 0; sent < requests; sent += depth) {
+                frames.rewind();
+                while (frames.hasRemaining()) channel.write(frames);
+                readResponses(depth);
+            }
+        }
+
+        private void readResponses(int count) throws IOException {
+            while (count > 0) {
+                if (channel.read(responses) < 0) throw new IOException("Connection closed by server");
+                responses.flip();
+                while (responses.remaining() >= 8 && responses.remaining() >= 8 + responses.getInt(responses.position() + 4)) {
+                    int status = responses.getInt();
+                    int length = responses.getInt();
+                    if (status != 200) throw new IOException("Unexpected status " + status);
+                    responses.position(responses.position() + length);
+                    count--;
+                }
+                responses.compact();
+            }
+        }
+    }
+}
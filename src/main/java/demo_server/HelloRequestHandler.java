@@ -9,7 +9,9 @@ import java.util.concurrent.CompletableFuture;
 public class HelloRequestHandler implements IRequestRouteHandler {
     @Override
     public CompletableFuture<InternalServerResponse> handleRequest(ServerRequest serverRequest) {
-        var requestBody = new String(serverRequest.requestBody());
+        var requestBody = serverRequest.isBodySpilled()
+            ? serverRequest.bodyLength() + " bytes spilled to disk"
+            : new String(serverRequest.requestBody());
         var requestHeaders = serverRequest.headers();
         return CompletableFuture.completedFuture(new InternalServerResponse(200, ("Hello from server, your body was: [" + requestBody + "], your headers was: [" + requestHeaders + "]").getBytes()));
     }
@@ -0,0 +1,98 @@
+package demo_server;
+
+import client.AsyncClient;
+import client.FrameTemplate;
+import client.LatencyHistogram;
+import client.LoopbackClient;
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import server.BoundedVirtualThreadExecutor;
+import server.ByteBufferPool;
+import server.LoopbackTransport;
+import server.RequestHandler;
+import server.RequestParser;
+import server.RequestRouteConfiguration;
+import server.Utility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the server side of a route without sockets: the demo routes run behind a {@link LoopbackTransport} and a
+ * {@link LoopbackClient} keeps pipelineDepth requests in flight, so the latency percentiles are parser, dispatch,
+ * handler and response path only.
+ * <p>
+ * Usage: {@code LoopbackBenchmark [requests] [pipelineDepth] [path]}
+ */
+@Slf4j
+public class LoopbackBenchmark {
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        String path = args.length > 2 ? args[2] : "/hello";
+
+        ApplicationConfig config;
+        try (var in = LoopbackBenchmark.class.getResourceAsStream("/application.json")) {
+            config = Utility.OBJECT_MAPPER.readValue(in, ApplicationConfig.class);
+        }
+        ByteBufferPool.initialise(config);
+
+        var routes = new RequestRouteConfiguration();
+        routes.addHandler("/hello", new HelloRequestHandler());
+        routes.addHandler("/delay", new DelayRequestHandler());
+
+        var body = "payload".getBytes(StandardCharsets.UTF_8);
+        try (var requestHandler = new RequestHandler(
+                 new RequestParser(), routes, new BoundedVirtualThreadExecutor(config.serverProperties().maxWorkerThreads()));
+             var transport = new LoopbackTransport(config, requestHandler);
+             var client = new LoopbackClient(transport)) {
+            var template = AsyncClient.template(path, Map.of());
+            var warmUp = new LatencyHistogram(TimeUnit.SECONDS.toNanos(10));
+            run(client, template, body, requests / 5, depth, warmUp);
+
+            var histogram = new LatencyHistogram(TimeUnit.SECONDS.toNanos(10));
+            long start = System.nanoTime();
+            run(client, template, body, requests, depth, histogram);
+            long elapsed = System.nanoTime() - start;
+
+            log.info("Requests:       {}", requests);
+            log.info("Pipeline depth: {}", depth);
+            log.info("Throughput:     {} req/s", String.format("%.0f", requests * 1e9 / elapsed));
+            log.info("Latency (us):   p50={} p99={} p99.9={} max={}",
+                histogram.getValueAtPercentile(50) / 1000,
+                histogram.getValueAtPercentile(99) / 1000,
+                histogram.getValueAtPercentile(99.9) / 1000,
+                histogram.getMax() / 1000);
+        }
+        System.exit(0);
+    }
+
+    private static void run(
+        LoopbackClient client,
+        FrameTemplate template,
+        byte[] body,
+        int requests,
+        int depth,
+        LatencyHistogram histogram
+    ) throws InterruptedException {
+        var inFlight = new Semaphore(depth);
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            long sentAt = System.nanoTime();
+            client.send(template, body).whenComplete((response, error) -> {
+                if (error == null && response.status() == 200) {
+                    synchronized (histogram) {
+                        histogram.recordValue(System.nanoTime() - sentAt);
+                    }
+                } else {
+                    log.warn("Request failed: {}", error != null ? error.getMessage() : response.status());
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquire(depth);
+        inFlight.release(depth);
+    }
+}
@@ -5,6 +5,12 @@ import model.ApplicationConfig;
 import server.AsyncServer;
 import server.BoundedVirtualThreadExecutor;
 import server.ByteBufferPool;
+import server.ConfigFileWatcher;
+import server.FileRouteHandler;
+import server.MappedFileCache;
+import server.ProxyRouteHandler;
+import server.PubSub;
+import server.RateLimiter;
 import server.RequestHandler;
 import server.RequestParser;
 import server.RequestRouteConfiguration;
@@ -12,17 +18,38 @@ import server.Utility;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 @Slf4j
 public class Main {
+    private static final String CONFIG_FILE_PROPERTY = "tiny-tcp.config";
+    private static final long CONFIG_POLL_INTERVAL_MS = 1000;
+
     private static ApplicationConfig readConfig(String path) throws IOException {
-        try (var in = Main.class.getResourceAsStream(path)) {
+        try (InputStream in = configFile() != null ? Files.newInputStream(configFile()) : Main.class.getResourceAsStream(path)) {
             if (in == null) throw new FileNotFoundException("Missing /application.json on classpath");
             return Utility.OBJECT_MAPPER.readValue(in, ApplicationConfig.class);
         }
     }
 
+    private static Path configFile() {
+        var file = System.getProperty(CONFIG_FILE_PROPERTY);
+        return file == null ? null : Path.of(file);
+    }
+
+    /**
+     * Starts the demo server on the configured port, or on every port given as an argument
+     * (e.g. {@code demo_server.Main 9998 9999 10000}) to get several local endpoints for client tests.
+     * Only the first server listens on the configured unix socket.
+     * <p>
+     * With {@code -Dtiny-tcp.config=<file>} the configuration is read from that file instead of the classpath, and
+     * changes to its runtime limits are applied to the running servers.
+     */
     public static void main(String[] args) throws IOException {
         var config = readConfig("/application.json");
         ByteBufferPool.initialise(config);
@@ -31,34 +58,94 @@ public class Main {
         requestConfiguration.addHandler("/hello", new HelloRequestHandler());
         requestConfiguration.addHandler("/delay", new DelayRequestHandler());
 
+        var fileServerProperties = config.fileServerProperties();
+        if (fileServerProperties != null) {
+            var cache = new MappedFileCache(
+                fileServerProperties.maxMappedBytes(),
+                fileServerProperties.maxEntries(),
+                fileServerProperties.regionSizeBytes(),
+                fileServerProperties.validationIntervalMs());
+            requestConfiguration.addHandler(
+                fileServerProperties.routePath(),
+                new FileRouteHandler(Path.of(fileServerProperties.rootDirectory()), cache));
+        }
+
+        List<ProxyRouteHandler> proxies = new ArrayList<>();
+        var proxyProperties = config.proxyProperties();
+        if (proxyProperties != null) {
+            for (var route : proxyProperties.routes()) {
+                var proxy = new ProxyRouteHandler(route.upstreams(), proxyProperties);
+                proxies.add(proxy);
+                for (var path : route.paths()) {
+                    requestConfiguration.addHandler(path, proxy);
+                }
+            }
+        }
+
+        // shared by all ports, so a client can not multiply its limit by spreading over them
+        var rateLimiter = config.rateLimitProperties() == null ? null : new RateLimiter(config.rateLimitProperties());
+
+        // shared by all ports too, subscribers get the messages published on any of them
+        var pubSub = config.pubSubProperties() == null ? null : new PubSub(config.pubSubProperties());
+        if (pubSub != null) {
+            requestConfiguration.addHandler("/publish", new PublishRequestHandler(pubSub));
+        }
+
+        List<Integer> ports = new ArrayList<>();
+        for (String arg : args) {
+            ports.add(Integer.parseInt(arg));
+        }
+        if (ports.isEmpty()) {
+            ports.add(config.serverProperties().port());
+        }
+
         var latch = new CountDownLatch(1);
-        try (
-            var server = new AsyncServer(
-                config,
+        List<AsyncServer> servers = new ArrayList<>();
+        for (int port : ports) {
+            var serverConfig = servers.isEmpty() ? config.withPort(port) : config.withPort(port).withUnixSocketProperties(null);
+            servers.add(new AsyncServer(
+                serverConfig,
                 new RequestHandler(
                     new RequestParser(),
                     requestConfiguration,
-                    new BoundedVirtualThreadExecutor(config.serverProperties().maxWorkerThreads())))
-        ) {
-            // graceful shutdown
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    new BoundedVirtualThreadExecutor(
+                        config.serverProperties().maxWorkerThreads(),
+                        config.schedulerProperties()),
+                    rateLimiter,
+                    pubSub)));
+        }
+
+        var configWatcher = configFile() == null ? null : new ConfigFileWatcher(configFile(), CONFIG_POLL_INTERVAL_MS, changed -> {
+            for (var server : servers) {
+                server.getRuntimeLimits().apply(changed);
+            }
+        });
+
+        // graceful shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.info("Shutting down server...");
+            if (configWatcher != null) {
+                configWatcher.close();
+            }
+            for (var server : servers) {
                 try {
-                    log.info("Shutting down server...");
                     server.close();
                 } catch (IOException e) {
                     // do nothing
-                } finally {
-                    latch.countDown();
                 }
-            }));
+            }
+            proxies.forEach(ProxyRouteHandler::close);
+            latch.countDown();
+        }));
 
+        for (var server : servers) {
             server.start();
+        }
 
-            try {
-                latch.await();
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt();
-            }
+        try {
+            latch.await();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
         }
     }
 }
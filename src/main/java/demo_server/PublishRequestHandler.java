@@ -0,0 +1,40 @@
+package demo_server;
+
+import model.Headers;
+import model.InternalServerResponse;
+import model.ServerRequest;
+import server.PubSub;
+import server.interfaces.IRequestRouteHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publishes the request body to the topic in its Topic header and answers with the number of subscribers it was
+ * queued for.
+ */
+public class PublishRequestHandler implements IRequestRouteHandler {
+    private final PubSub pubSub;
+
+    public PublishRequestHandler(PubSub pubSub) {
+        this.pubSub = pubSub;
+    }
+
+    @Override
+    public InternalServerResponse checkHeader(ServerRequest serverRequest, long bodyLength) {
+        if (serverRequest.headers().get(Headers.TOPIC) == null) {
+            return new InternalServerResponse(400, "Missing Topic header".getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<InternalServerResponse> handleRequest(ServerRequest serverRequest) {
+        var topic = serverRequest.headers().get(Headers.TOPIC);
+        if (serverRequest.isBodySpilled()) {
+            return CompletableFuture.completedFuture(new InternalServerResponse(400, "Message too large".getBytes(StandardCharsets.UTF_8)));
+        }
+        int delivered = pubSub.publish(topic, serverRequest.requestBody());
+        return CompletableFuture.completedFuture(new InternalServerResponse(200, String.valueOf(delivered).getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -1,6 +1,251 @@
 package model;
 
-public record ApplicationConfig(ServerProperties serverProperties, ByteBufferProperties byteBufferProperties) {
+import java.util.List;
+import java.util.Map;
+
+public record ApplicationConfig(
+    ServerProperties serverProperties,
+    ByteBufferProperties byteBufferProperties,
+    ConnectionProperties connectionProperties,
+    WriteProperties writeProperties,
+    RequestBodyProperties requestBodyProperties,
+    MemoryProperties memoryProperties,
+    FileServerProperties fileServerProperties,
+    UnixSocketProperties unixSocketProperties,
+    SchedulerProperties schedulerProperties,
+    RateLimitProperties rateLimitProperties,
+    CaptureProperties captureProperties,
+    WarmUpProperties warmUpProperties,
+    ProxyProperties proxyProperties,
+    PubSubProperties pubSubProperties,
+    AccessLogProperties accessLogProperties
+) {
+    public ApplicationConfig {
+        // sections added after the first release may be missing from older application.json files
+        connectionProperties = connectionProperties == null ? ConnectionProperties.DEFAULT : connectionProperties;
+        writeProperties = writeProperties == null ? WriteProperties.DEFAULT : writeProperties;
+        requestBodyProperties = requestBodyProperties == null ? RequestBodyProperties.DEFAULT : requestBodyProperties;
+        memoryProperties = memoryProperties == null ? MemoryProperties.DEFAULT : memoryProperties;
+        schedulerProperties = schedulerProperties == null ? SchedulerProperties.DEFAULT : schedulerProperties;
+    }
+
     public record ServerProperties(int port, int maxWorkerThreads, long connectionIdleTimeoutMs) {}
-    public record ByteBufferProperties(int minPoolSize, int bufferSize, int maxPoolSize) {}
+
+    /**
+     * Pool of bufferSize read and write buffers. minPoolSize buffers are kept at all times, up to maxPoolSize (plus
+     * 25% for spikes) while demand needs them. Every adaptIntervalMs (1000 when 0) the pool keeps at least as many
+     * idle buffers as it missed in the interval, and once shrinkAfterIntervals intervals (30 when 0) went by without
+     * a miss it releases half of the buffers that stayed idle throughout.
+     */
+    public record ByteBufferProperties(int minPoolSize, int bufferSize, int maxPoolSize, long adaptIntervalMs, int shrinkAfterIntervals) {
+        public ByteBufferProperties {
+            adaptIntervalMs = adaptIntervalMs > 0 ? adaptIntervalMs : 1000;
+            shrinkAfterIntervals = shrinkAfterIntervals > 0 ? shrinkAfterIntervals : 30;
+        }
+    }
+
+    /**
+     * Per-connection backpressure: reading stops once maxInFlightRequests are dispatched but not yet written, or once
+     * queued response bytes reach highWatermarkBytes, and resumes when both are back under their limits
+     * (queued bytes at or below lowWatermarkBytes).
+     */
+    public record ConnectionProperties(int maxInFlightRequests, long highWatermarkBytes, long lowWatermarkBytes) {
+        public static final ConnectionProperties DEFAULT = new ConnectionProperties(16, 1024 * 1024, 256 * 1024);
+    }
+
+    /**
+     * Responses that are ready for the same connection go out in one gathering write of at most maxBatchResponses
+     * responses / maxBatchBytes bytes (a single larger response is still written on its own).
+     * IMMEDIATE writes whatever is ready as soon as the previous write finished, BATCHED additionally waits up to
+     * maxFlushDelayMicros for more responses while other requests of the connection are still being handled.
+     */
+    public record WriteProperties(int maxBatchResponses, int maxBatchBytes, FlushPolicy flushPolicy, long maxFlushDelayMicros) {
+        public static final WriteProperties DEFAULT = new WriteProperties(64, 64 * 1024, FlushPolicy.IMMEDIATE, 0);
+    }
+
+    public enum FlushPolicy { IMMEDIATE, BATCHED }
+
+    /**
+     * Request bodies larger than spillThresholdBytes are streamed into a temporary file in spillDirectory
+     * (null for the system temporary directory) instead of the heap, and deleted once the request finished.
+     */
+    public record RequestBodyProperties(int spillThresholdBytes, String spillDirectory) {
+        public static final RequestBodyProperties DEFAULT = new RequestBodyProperties(8 * 1024 * 1024, null);
+    }
+
+    /**
+     * Server-wide limit on heap held by in-flight frames and queued responses. Frames larger than maxFrameBytes are
+     * answered with 413, while maxInFlightBytes are in use connections stop reading new frames. Spilled bodies count
+     * against maxFrameBytes but not against the heap budget.
+     */
+    public record MemoryProperties(long maxFrameBytes, long maxInFlightBytes) {
+        public static final MemoryProperties DEFAULT = new MemoryProperties(1024 * 1024 * 1024, 512 * 1024 * 1024);
+    }
+
+    /**
+     * Optional built-in file route: files below rootDirectory are served on routePath from a cache of memory-mapped
+     * regions of at most regionSizeBytes, bounded to maxMappedBytes / maxEntries. Cached files are checked for
+     * changes on disk at most every validationIntervalMs. The route is disabled when the section is missing.
+     */
+    public record FileServerProperties(
+        String rootDirectory,
+        String routePath,
+        long maxMappedBytes,
+        int maxEntries,
+        int regionSizeBytes,
+        long validationIntervalMs
+    ) {}
+
+    /**
+     * Optional Unix domain socket the server listens on next to its TCP port, for clients on the same host.
+     * Connections are served by selectorThreads selector threads (0 for one per core). Disabled when the section
+     * is missing.
+     */
+    public record UnixSocketProperties(String path, int selectorThreads) {}
+
+    /**
+     * Requests waiting for one of the maxWorkerThreads slots are queued by their Priority header, a request that
+     * waited agingIntervalMs is treated as one priority class more urgent (0 disables aging). Within a class the
+     * slots are shared round-robin between clients (Client-Id header, otherwise the connection): a client gets
+     * its weight from clientWeights, or defaultWeight, requests per turn.
+     */
+    public record SchedulerProperties(long agingIntervalMs, int defaultWeight, Map<String, Integer> clientWeights) {
+        public static final SchedulerProperties DEFAULT = new SchedulerProperties(250, 1, Map.of());
+
+        public SchedulerProperties {
+            defaultWeight = Math.max(1, defaultWeight);
+            clientWeights = clientWeights == null ? Map.of() : Map.copyOf(clientWeights);
+        }
+    }
+
+    /**
+     * Optional per-client rate limit: requests carrying the keyHeader are limited to requestsPerSecond per header
+     * value with bursts of up to burst requests, at most maxKeys values are tracked. Requests over the limit are
+     * answered with 429 before they reach the executor, requests without the header are not limited. Disabled when
+     * the section is missing.
+     */
+    public record RateLimitProperties(String keyHeader, double requestsPerSecond, int burst, int maxKeys) {}
+
+    /**
+     * Optional traffic capture: a sampleRate fraction (0..1) of the request frames read is appended to
+     * memory-mapped segment files of segmentBytes in directory, for replay with client.TrafficReplayer. Capture
+     * stops after maxSegments segments. Disabled when the section is missing.
+     */
+    public record CaptureProperties(String directory, double sampleRate, int segmentBytes, int maxSegments) {}
+
+    /**
+     * Optional warm-up before the server binds its port: the requests, or the frames of a traffic capture (the
+     * capture's path prefix, e.g. captures/capture-9998), are sent round and round over that many loopback
+     * connections through the whole request path until JIT compilation was idle for quietPeriodMs or maxDurationMs
+     * passed. Disabled when the section is missing.
+     */
+    public record WarmUpProperties(
+        long maxDurationMs,
+        long quietPeriodMs,
+        int connections,
+        String capture,
+        List<WarmUpRequest> requests
+    ) {
+        public WarmUpProperties {
+            connections = Math.max(1, connections);
+            requests = requests == null ? List.of() : List.copyOf(requests);
+        }
+    }
+
+    public record WarmUpRequest(String path, Map<String, String> headers, String body) {}
+
+    /**
+     * Optional reverse proxy routes: requests for a route's paths are forwarded to one of its upstreams (host:port or
+     * a unix socket path) over connectionsPerUpstream pipelined keep-alive connections of at most maxPipelineDepth
+     * requests each. An upstream that failed consecutiveFailures times in a row (errors, timeouts or 5xx) is
+     * ejected for baseEjectionMs times the number of times it was ejected in a row, while at most
+     * maxEjectionPercent of a route's upstreams are ejected. No routes are proxied when the section is missing.
+     */
+    public record ProxyProperties(
+        List<ProxyRoute> routes,
+        int connectionsPerUpstream,
+        int maxPipelineDepth,
+        long requestTimeoutMs,
+        int consecutiveFailures,
+        long baseEjectionMs,
+        int maxEjectionPercent
+    ) {
+        public ProxyProperties {
+            routes = routes == null ? List.of() : List.copyOf(routes);
+            consecutiveFailures = Math.max(1, consecutiveFailures);
+        }
+    }
+
+    public record ProxyRoute(List<String> paths, List<String> upstreams) {}
+
+    /**
+     * Optional server push: connections subscribe to topics and published messages are queued on every subscriber,
+     * at most maxQueuedMessages and maxQueuedBytes each. A subscriber whose queue is full misses the message (DROP)
+     * or is disconnected (DISCONNECT). Without the section subscribe frames are routed like any other path.
+     */
+    public record PubSubProperties(
+        int maxQueuedMessages,
+        long maxQueuedBytes,
+        SlowSubscriberPolicy slowSubscriberPolicy,
+        int maxTopicsPerConnection
+    ) {
+        public PubSubProperties {
+            maxQueuedMessages = Math.max(1, maxQueuedMessages);
+            slowSubscriberPolicy = slowSubscriberPolicy == null ? SlowSubscriberPolicy.DROP : slowSubscriberPolicy;
+            maxTopicsPerConnection = maxTopicsPerConnection <= 0 ? Integer.MAX_VALUE : maxTopicsPerConnection;
+        }
+    }
+
+    public enum SlowSubscriberPolicy { DROP, DISCONNECT }
+
+    /**
+     * Optional access log: connection and request events go through a ring of ringSize entries to a background
+     * writer that appends them as text lines to memory-mapped files of segmentBytes in directory, keeping the last
+     * maxSegments files. The writer polls the ring every pollIntervalMs, events are dropped while the ring is full.
+     * Disabled when the section is missing.
+     */
+    public record AccessLogProperties(String directory, int ringSize, int segmentBytes, int maxSegments, long pollIntervalMs) {
+        public AccessLogProperties {
+            maxSegments = Math.max(1, maxSegments);
+            pollIntervalMs = Math.max(1, pollIntervalMs);
+        }
+    }
+
+    public ApplicationConfig withPort(int port) {
+        return new ApplicationConfig(
+            new ServerProperties(port, serverProperties.maxWorkerThreads(), serverProperties.connectionIdleTimeoutMs()),
+            byteBufferProperties,
+            connectionProperties,
+            writeProperties,
+            requestBodyProperties,
+            memoryProperties,
+            fileServerProperties,
+            unixSocketProperties,
+            schedulerProperties,
+            rateLimitProperties,
+            captureProperties,
+            warmUpProperties,
+            proxyProperties,
+            pubSubProperties,
+            accessLogProperties);
+    }
+
+    public ApplicationConfig withUnixSocketProperties(UnixSocketProperties unixSocketProperties) {
+        return new ApplicationConfig(
+            serverProperties,
+            byteBufferProperties,
+            connectionProperties,
+            writeProperties,
+            requestBodyProperties,
+            memoryProperties,
+            fileServerProperties,
+            unixSocketProperties,
+            schedulerProperties,
+            rateLimitProperties,
+            captureProperties,
+            warmUpProperties,
+            proxyProperties,
+            pubSubProperties,
+            accessLogProperties);
+    }
 }
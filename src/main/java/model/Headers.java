@@ -0,0 +1,172 @@
+package model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Request headers in one flat array [key0, value0, key1, value1, ...] with linear lookups, requests carry a handful
+ * of headers so this beats hashing and allocates a single array. Keys are case-sensitive and a repeated key
+ * replaces the earlier value, like the HashMap it replaces.
+ * <p>
+ * Well-known headers are recognised once while the frame is parsed, e.g. {@link #isKeepAlive()} and
+ * {@link #priority()}.
+ */
+public final class Headers extends AbstractMap<String, String> {
+    public static final String KEEP_ALIVE = "Keep-Alive";
+    public static final String PRIORITY = "Priority";
+    public static final String CLIENT_ID = "Client-Id";
+    public static final String TOPIC = "Topic";
+
+    private String[] entries;
+    private int size = 0;
+    private boolean keepAlive = false;
+    private Priority priority = Priority.NORMAL;
+    private Set<Entry<String, String>> entrySet;
+
+    public Headers(int expectedSize) {
+        this.entries = new String[Math.max(1, expectedSize) * 2];
+    }
+
+    public static Headers of(Map<String, String> headers) {
+        if (headers instanceof Headers h) return h;
+        var copy = new Headers(headers.size());
+        headers.forEach(copy::put);
+        return copy;
+    }
+
+    /**
+     * Keep-Alive: true (case-insensitive value) was sent.
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Value of the Priority header, NORMAL when it is missing or unknown.
+     */
+    public Priority priority() {
+        return priority;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null) throw new NullPointerException("header key");
+        if (KEEP_ALIVE.equals(key)) keepAlive = "true".equalsIgnoreCase(value);
+        else if (PRIORITY.equals(key)) priority = Priority.of(value);
+
+        int index = indexOf(key);
+        if (index >= 0) {
+            String previous = entries[index + 1];
+            entries[index + 1] = value;
+            return previous;
+        }
+        if (size * 2 == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[size * 2] = key;
+        entries[size * 2 + 1] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? entries[index + 1] : null;
+    }
+
+    @Override
+    public String getOrDefault(Object key, String defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 ? entries[index + 1] : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) return null;
+        String previous = entries[index + 1];
+        System.arraycopy(entries, index + 2, entries, index, size * 2 - index - 2);
+        size--;
+        entries[size * 2] = null;
+        entries[size * 2 + 1] = null;
+        if (KEEP_ALIVE.equals(key)) keepAlive = false;
+        else if (PRIORITY.equals(key)) priority = Priority.NORMAL;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(entries, 0, size * 2, null);
+        size = 0;
+        keepAlive = false;
+        priority = Priority.NORMAL;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size * 2; i += 2) {
+            // parsed well-known keys are the interned constants, so identity usually hits first
+            if (entries[i] == key || entries[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+        private int next = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size * 2;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            last = next;
+            next += 2;
+            return new SimpleImmutableEntry<>(entries[last], entries[last + 1]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) throw new IllegalStateException();
+            Headers.this.remove(entries[last]);
+            next = last;
+            last = -1;
+        }
+    }
+}
@@ -2,13 +2,47 @@ package model;
 
 import lombok.Getter;
 
+import java.nio.ByteBuffer;
+
 @Getter
 public class InternalServerResponse {
+    private static final byte[] EMPTY = new byte[0];
+
     private final int statusCode;
     private final byte[] responseBody;
+    /**
+     * Zero-copy body (e.g. slices of a memory-mapped file) written to the socket as is, null for byte[] bodies.
+     */
+    private final ByteBuffer[] bodyBuffers;
+    private final int bodyLength;
+    private final Runnable onRelease;
 
     public InternalServerResponse(int statusCode, byte[] responseBody) {
         this.statusCode = statusCode;
         this.responseBody = responseBody;
+        this.bodyBuffers = null;
+        this.bodyLength = responseBody.length;
+        this.onRelease = null;
+    }
+
+    /**
+     * @param bodyBuffers buffers owned by this response, written from their position to their limit
+     * @param onRelease   called once the body was written or the response was dropped, e.g. to unpin a cache entry
+     */
+    public InternalServerResponse(int statusCode, ByteBuffer[] bodyBuffers, Runnable onRelease) {
+        this.statusCode = statusCode;
+        this.responseBody = EMPTY;
+        this.bodyBuffers = bodyBuffers;
+        long length = 0;
+        for (ByteBuffer buffer : bodyBuffers) {
+            length += buffer.remaining();
+        }
+        if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("Response body too large: " + length);
+        this.bodyLength = (int) length;
+        this.onRelease = onRelease;
+    }
+
+    public void release() {
+        if (onRelease != null) onRelease.run();
     }
 }
@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * Scheduling class of a request, sent in the Priority header as one of critical, interactive, normal or batch
+ * (case-insensitive). Requests without the header or with an unknown value are NORMAL.
+ */
+public enum Priority {
+    CRITICAL("critical"),
+    INTERACTIVE("interactive"),
+    NORMAL("normal"),
+    BATCH("batch");
+
+    private static final Priority[] VALUES = values();
+
+    private final String headerValue;
+
+    Priority(String headerValue) {
+        this.headerValue = headerValue;
+    }
+
+    public String headerValue() {
+        return headerValue;
+    }
+
+    public static Priority of(String headerValue) {
+        if (headerValue == null) return NORMAL;
+        for (var priority : VALUES) {
+            if (priority.headerValue == headerValue || priority.headerValue.equalsIgnoreCase(headerValue.trim())) return priority;
+        }
+        return NORMAL;
+    }
+}
@@ -1,6 +1,10 @@
 package model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * [HeaderLength: 4 bytes][BodyLength: 4 bytes][Header bytes][Body bytes]
@@ -8,9 +12,24 @@ import java.nio.ByteBuffer;
  * [PathLength: 2 bytes][Path bytes][HeaderCount: 2 bytes][Header1][Header2]...
  * Each header entry:
  * [KeyLength: 2 bytes][Key bytes][ValueLength: 2 bytes][Value bytes]
- *
+ * <p>
+ * Bodies larger than the spill threshold are streamed into a temporary file ({@link SpilledBody}) instead of a heap
+ * array, whoever ends up owning the accumulator must {@link #discard()} it if the request is never handled.
+ * <p>
+ * A connection reuses one accumulator for all its frames, {@link #reset()} keeps the payload array (up to
+ * {@link #RETAINED_PAYLOAD_BYTES}) so small frames on a keep-alive connection do not allocate.
+ * <p>
+ * The payload can be allocated in two steps, {@link #allocateHeader()} first so the header block can be checked
+ * before the body is buffered, then {@link #allocatePayload()} to read the body or {@link #skipBody()} to consume it
+ * without keeping it.
  */
 public class RequestAccumulator {
+    public static final int RETAINED_PAYLOAD_BYTES = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int spillThresholdBytes;
+    private final Path spillDirectory;
+
     // First 8 bytes carry lengths: [headerLen:int][bodyLen:int]
     private final byte[] headerPrefix = new byte[8];
     private int headerPos = 0; // how many of the first 8 bytes we have
@@ -18,9 +37,31 @@ public class RequestAccumulator {
     private int headerLength = -1;
     private int bodyLength = -1;
 
-    // After both lengths are known, we allocate a single payload buffer of size headerLen + bodyLen
+    // After both lengths are known, the first payloadLength bytes of payload hold header and (unless spilled) body
     private byte[] payload;
+    private ByteBuffer payloadView; // wraps payload, reused for headerBuffer()
+    private int payloadLength = -1;
     private int payloadWritePos = 0;
+    private boolean headerOnly = false; // payload allocated for the header block, the body is not admitted yet
+    private boolean headerChecked = false;
+    private boolean bodySkipped = false;
+    private long skipRemaining = 0; // body bytes still to be consumed without keeping them
+    private SpilledBody spilledBody; // body bytes when bodyLength is above the spill threshold
+
+    /**
+     * Keeps every body on the heap.
+     */
+    public RequestAccumulator() {
+        this(Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @param spillDirectory where spilled bodies are written, null for the default temporary directory
+     */
+    public RequestAccumulator(int spillThresholdBytes, Path spillDirectory) {
+        this.spillThresholdBytes = spillThresholdBytes;
+        this.spillDirectory = spillDirectory;
+    }
 
     public void append(ByteBuffer buffer) {
         // 1) Fill the 8-byte header prefix first
@@ -32,21 +73,117 @@ public class RequestAccumulator {
 
             // parse header length if first 4 bytes available
             if (headerLength == -1 && headerPos >= 4) {
-                headerLength = ByteBuffer.wrap(headerPrefix, 0, 4).getInt();
+                headerLength = readInt(0);
             }
-            // parse body length and allocate payload if both ints available
+            // parse body length if both ints available, the payload is allocated once the frame was admitted
             if (bodyLength == -1 && headerPos >= 8) {
-                bodyLength = ByteBuffer.wrap(headerPrefix, 4, 4).getInt();
-                payload = new byte[headerLength + bodyLength];
+                bodyLength = readInt(4);
             }
         }
 
         // 2) Copy remaining bytes into payload (if allocated)
-        if (payload != null && buffer.hasRemaining() && payloadWritePos < payload.length) {
-            int n = Math.min(buffer.remaining(), payload.length - payloadWritePos);
+        if (payloadLength >= 0 && buffer.hasRemaining() && payloadWritePos < payloadLength) {
+            int n = Math.min(buffer.remaining(), payloadLength - payloadWritePos);
             buffer.get(payload, payloadWritePos, n);
             payloadWritePos += n;
         }
+
+        // 3) Drop the body of a rejected frame
+        if (skipRemaining > 0 && buffer.hasRemaining()) {
+            int n = (int) Math.min(buffer.remaining(), skipRemaining);
+            buffer.position(buffer.position() + n);
+            skipRemaining -= n;
+        }
+
+        // 4) Stream the rest of a large body to disk
+        if (spilledBody != null && buffer.hasRemaining() && payloadWritePos >= payloadLength) {
+            try {
+                spilledBody.append(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spill request body", e);
+            }
+        }
+    }
+
+    /**
+     * Allocates room for the header block only, append() stops after it until {@link #allocatePayload()} or
+     * {@link #skipBody()} is called.
+     */
+    public void allocateHeader() {
+        if (payloadLength >= 0) return;
+        if (!isBodyLengthRead()) throw new IllegalStateException("Frame lengths not read yet");
+        if (!hasValidLengths()) throw new IllegalStateException("Negative frame length");
+        if (payload == null || payload.length < headerLength) {
+            payload = new byte[headerLength];
+            payloadView = null;
+        }
+        payloadLength = headerLength;
+        headerOnly = true;
+    }
+
+    /**
+     * Allocates the payload once both lengths are known, after that append() consumes the rest of the frame. The
+     * header bytes read after {@link #allocateHeader()} are kept.
+     */
+    public void allocatePayload() {
+        if (payloadLength >= 0 && !headerOnly) return;
+        if (!isBodyLengthRead()) throw new IllegalStateException("Frame lengths not read yet");
+        if (!hasValidLengths()) throw new IllegalStateException("Negative frame length");
+        if (payloadHeapBytes() > Integer.MAX_VALUE - 8) throw new IllegalStateException("Frame too large for the heap: " + frameLength());
+        if (bodyLength > spillThresholdBytes) {
+            try {
+                spilledBody = new SpilledBody(spillDirectory, bodyLength);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create spill file", e);
+            }
+            payloadLength = headerLength;
+        } else {
+            payloadLength = headerLength + bodyLength;
+        }
+        if (payload == null || payload.length < payloadLength) {
+            payload = payloadWritePos > 0 ? Arrays.copyOf(payload, payloadLength) : new byte[payloadLength];
+            payloadView = null;
+        }
+        headerOnly = false;
+    }
+
+    /**
+     * Consumes the body of a frame whose header block was rejected without keeping it, the frame is complete once
+     * the body went by.
+     */
+    public void skipBody() {
+        if (!headerOnly) throw new IllegalStateException("Header block not allocated on its own");
+        headerOnly = false;
+        bodySkipped = true;
+        skipRemaining = bodyLength;
+    }
+
+    /**
+     * Prepares the accumulator for the next frame of the connection. A body that was not handed out is deleted,
+     * the payload array is kept unless it is larger than {@link #RETAINED_PAYLOAD_BYTES}.
+     */
+    public void reset() {
+        discard();
+        headerPos = 0;
+        headerLength = -1;
+        bodyLength = -1;
+        payloadLength = -1;
+        payloadWritePos = 0;
+        headerOnly = false;
+        headerChecked = false;
+        bodySkipped = false;
+        skipRemaining = 0;
+        if (payload != null && payload.length > RETAINED_PAYLOAD_BYTES) {
+            payload = null;
+            payloadView = null;
+        }
+    }
+
+    private int readInt(int offset) {
+        return (headerPrefix[offset] & 0xFF) << 24
+            | (headerPrefix[offset + 1] & 0xFF) << 16
+            | (headerPrefix[offset + 2] & 0xFF) << 8
+            | (headerPrefix[offset + 3] & 0xFF);
     }
 
     public boolean isHeaderLengthRead() {
@@ -55,7 +192,7 @@ public class RequestAccumulator {
 
     public void parseHeaderLength() {
         if (headerLength == -1 && isHeaderLengthRead()) {
-            headerLength = ByteBuffer.wrap(headerPrefix, 0, 4).getInt();
+            headerLength = readInt(0);
         }
     }
 
@@ -65,15 +202,91 @@ public class RequestAccumulator {
 
     public void parseBodyLength() {
         if (bodyLength == -1 && isBodyLengthRead()) {
-            bodyLength = ByteBuffer.wrap(headerPrefix, 4, 4).getInt();
-            if (payload == null) {
-                payload = new byte[headerLength + bodyLength];
-            }
+            bodyLength = readInt(4);
         }
     }
 
+    public boolean isHeaderAllocated() {
+        return payloadLength >= 0;
+    }
+
+    /**
+     * Allocated for the whole frame, or the body is being skipped.
+     */
+    public boolean isPayloadAllocated() {
+        return payloadLength >= 0 && !headerOnly;
+    }
+
+    public boolean isHeaderComplete() {
+        return payloadLength >= 0 && payloadWritePos >= headerLength;
+    }
+
+    /**
+     * Set once the header block was checked before the body arrived, so it is not checked again when the frame
+     * is handled.
+     */
+    public void markHeaderChecked() {
+        headerChecked = true;
+    }
+
+    public boolean isHeaderChecked() {
+        return headerChecked;
+    }
+
+    public boolean isBodySkipped() {
+        return bodySkipped;
+    }
+
+    public int headerLength() {
+        return headerLength;
+    }
+
+    public int bodyLength() {
+        return bodyLength;
+    }
+
+    public boolean hasValidLengths() {
+        return headerLength >= 0 && bodyLength >= 0;
+    }
+
+    public long frameLength() {
+        return 8L + headerLength + bodyLength;
+    }
+
+    /**
+     * Heap bytes {@link #allocatePayload()} will take, a spilled body only keeps its header on the heap.
+     */
+    public long payloadHeapBytes() {
+        return bodyLength > spillThresholdBytes ? headerLength : (long) headerLength + bodyLength;
+    }
+
     public boolean isComplete() {
-        return headerLength >= 0 && bodyLength >= 0 && payload != null && payloadWritePos >= payload.length;
+        return headerLength >= 0 && bodyLength >= 0 && payloadLength >= 0 && !headerOnly && payloadWritePos >= payloadLength
+            && skipRemaining == 0 && (spilledBody == null || spilledBody.isComplete());
+    }
+
+    public boolean isBodySpilled() {
+        return spilledBody != null;
+    }
+
+    /**
+     * Header bytes as a view on the payload, for parsing in place without {@link #extractHeaderBytes()}'s copy.
+     * The view is shared and only valid until the next {@link #reset()}.
+     */
+    public ByteBuffer headerBuffer() {
+        if (payloadView == null) payloadView = ByteBuffer.wrap(payload);
+        return payloadView.limit(headerLength).position(0);
+    }
+
+    /**
+     * Writes the complete frame, length prefix included, to dst at index without moving dst's position.
+     * Only for complete frames whose body was not spilled.
+     */
+    public void copyFrameTo(ByteBuffer dst, int index) {
+        if (spilledBody != null) throw new IllegalStateException("Body was spilled to disk");
+        dst.putInt(index, headerLength);
+        dst.putInt(index + 4, bodyLength);
+        dst.put(index + 8, payload, 0, headerLength + bodyLength);
     }
 
     public byte[] extractHeaderBytes() {
@@ -82,7 +295,28 @@ public class RequestAccumulator {
         return header;
     }
 
+    /**
+     * The spilled body, ownership moves to the caller.
+     */
+    public SpilledBody takeSpilledBody() {
+        var body = spilledBody;
+        spilledBody = null;
+        return body;
+    }
+
+    /**
+     * Deletes a spilled body that was not handed out, for frames that are dropped or never completed.
+     */
+    public void discard() {
+        if (spilledBody != null) {
+            spilledBody.close();
+            spilledBody = null;
+        }
+    }
+
     public byte[] extractBodyBytes() {
+        if (spilledBody != null) throw new IllegalStateException("Body was spilled to disk, use takeSpilledBody()");
+        if (bodyLength == 0) return EMPTY;
         byte[] body = new byte[bodyLength];
         System.arraycopy(payload, headerLength, body, 0, bodyLength);
         return body;
@@ -2,12 +2,55 @@ package model;
 
 import lombok.Builder;
 
-import java.util.Map;
+import java.nio.ByteBuffer;
 
+/**
+ * A parsed request. Bodies above the configured spill threshold are not on the heap: requestBody is empty and the
+ * bytes are in spilledBody, use {@link #body()} to read either kind. Headers behave like a Map, well-known ones
+ * such as Keep-Alive are recognised while parsing.
+ * <p>
+ * headerBlock is the header block as received, only kept for routes that forward requests (see
+ * server.interfaces.IRequestRouteHandler#forwardsHeaderBlock()), null otherwise.
+ */
 @Builder
 public record ServerRequest(
     String path,
-    Map<String, String> headers,
-    byte[] requestBody
+    Headers headers,
+    byte[] requestBody,
+    SpilledBody spilledBody,
+    byte[] headerBlock
 ) {
+    public ServerRequest(String path, Headers headers, byte[] requestBody, SpilledBody spilledBody) {
+        this(path, headers, requestBody, spilledBody, null);
+    }
+
+    public ServerRequest withHeaderBlock(byte[] headerBlock) {
+        return new ServerRequest(path, headers, requestBody, spilledBody, headerBlock);
+    }
+
+    public boolean isKeepAlive() {
+        return headers.isKeepAlive();
+    }
+
+    public boolean isBodySpilled() {
+        return spilledBody != null;
+    }
+
+    public long bodyLength() {
+        return spilledBody != null ? spilledBody.size() : requestBody.length;
+    }
+
+    /**
+     * Read-only view of the body, memory-mapped for spilled bodies.
+     */
+    public ByteBuffer body() {
+        return spilledBody != null ? spilledBody.map() : ByteBuffer.wrap(requestBody).asReadOnlyBuffer();
+    }
+
+    /**
+     * Deletes the spilled body, called once the response was written or dropped.
+     */
+    public void release() {
+        if (spilledBody != null) spilledBody.close();
+    }
 }
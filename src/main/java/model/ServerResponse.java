@@ -1,5 +1,10 @@
 package model;
 
+import java.nio.ByteBuffer;
+
+/**
+ * serverRequest is null for responses the server produced without parsing a request, e.g. a rejected frame.
+ */
 public record ServerResponse(
     ServerRequest serverRequest,
     InternalServerResponse internalServerResponse,
@@ -9,11 +14,20 @@ public record ServerResponse(
         return internalServerResponse.getResponseBody();
     }
 
+    public ByteBuffer[] getBodyBuffers() {
+        return internalServerResponse.getBodyBuffers();
+    }
+
     public int size() {
-        return internalServerResponse.getResponseBody().length;
+        return internalServerResponse.getBodyLength();
     }
 
     public int statusCode() {
         return internalServerResponse.getStatusCode();
     }
+
+    public void release() {
+        internalServerResponse.release();
+        if (serverRequest != null) serverRequest.release();
+    }
 }
@@ -0,0 +1,88 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request body streamed into a temporary file instead of the heap. The file is opened with DELETE_ON_CLOSE, so it
+ * disappears once the request is released or the process dies (on Linux it is unlinked right away and only the open
+ * channel keeps it alive), a mapping obtained before that stays readable.
+ */
+public class SpilledBody implements AutoCloseable {
+    private final FileChannel channel;
+    private final long size;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private long written = 0;
+    private MappedByteBuffer mapped;
+
+    SpilledBody(Path directory, long size) throws IOException {
+        var file = directory == null
+            ? Files.createTempFile("tiny-tcp-body-", ".tmp")
+            : Files.createTempFile(directory, "tiny-tcp-body-", ".tmp");
+        this.channel = FileChannel.open(
+            file,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.DELETE_ON_CLOSE);
+        this.size = size;
+    }
+
+    /**
+     * Writes up to the missing number of bytes from src, returns how many were consumed.
+     */
+    int append(ByteBuffer src) throws IOException {
+        int n = (int) Math.min(src.remaining(), size - written);
+        var chunk = src.slice(src.position(), n);
+        while (chunk.hasRemaining()) {
+            written += channel.write(chunk, written);
+        }
+        src.position(src.position() + n);
+        return n;
+    }
+
+    boolean isComplete() {
+        return written >= size;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Read-only view of the whole body, mapped on first use.
+     */
+    public synchronized ByteBuffer map() {
+        if (mapped == null) {
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return mapped.duplicate();
+    }
+
+    /**
+     * Channel for streaming reads at explicit positions, e.g. {@code channel().read(dst, position)} or transferTo.
+     */
+    public FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the file is gone with the process at the latest
+        }
+    }
+}
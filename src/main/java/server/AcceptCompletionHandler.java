@@ -1,30 +1,39 @@
 package server;
 
 import lombok.extern.slf4j.Slf4j;
-import model.RequestAccumulator;
+import model.ApplicationConfig;
 import server.interfaces.IRequestHandler;
 
 import java.io.IOException;
+import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Slf4j
-public record AcceptCompletionHandler(AsynchronousServerSocketChannel serverSocketChannel) implements CompletionHandler<AsynchronousSocketChannel, IRequestHandler> {
+public record AcceptCompletionHandler(
+    AsynchronousServerSocketChannel serverSocketChannel,
+    ApplicationConfig config,
+    ScheduledExecutorService scheduler,
+    MemoryBudget memoryBudget,
+    RuntimeLimits runtimeLimits,
+    TrafficRecorder trafficRecorder,
+    AccessLog accessLog
+) implements CompletionHandler<AsynchronousSocketChannel, IRequestHandler> {
 
     @Override
     public void completed(AsynchronousSocketChannel socketChannel, IRequestHandler requestHandler) {
         this.serverSocketChannel.accept(requestHandler, this);
-        log.info("Client connected");
-        var bufferPool = ByteBufferPool.getInstance();
-        var readBuffer = bufferPool.get();
+        log.debug("Client connected");
 
         try {
-            ReadCompletionHandler readCompletionHandler = new ReadCompletionHandler(socketChannel, requestHandler, readBuffer);
-            socketChannel.read(readBuffer, new RequestAccumulator(), readCompletionHandler);
+            // responses are coalesced by the connection already, Nagle would only delay pipelined ones
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            new Connection(new AsyncConnectionChannel(socketChannel), requestHandler, config, scheduler, memoryBudget, runtimeLimits, trafficRecorder, accessLog).start();
         } catch (Exception t) {
             log.error("Failed to start read for new client: {}", t.getMessage(), t);
-            bufferPool.returnBuffer(readBuffer);
             try {
                 socketChannel.close();
             } catch (IOException ignored) {
@@ -35,6 +44,7 @@ public record AcceptCompletionHandler(AsynchronousServerSocketChannel serverSock
 
     @Override
     public void failed(Throwable exc, IRequestHandler requestHandler) {
+        if (exc instanceof AsynchronousCloseException) return; // server channel closed
         log.error("Exception while awaiting client connection", exc);
     }
 }
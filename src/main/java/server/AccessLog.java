@@ -0,0 +1,302 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log of connection and request events. Event fields are stored in preallocated parallel arrays that form
+ * a bounded ring: a producer claims an entry with one CAS on the tail and publishes it with a release store of the
+ * entry's sequence, so I/O threads never lock, block or allocate, and drop the event when the ring is full.
+ * <p>
+ * A background thread drains the ring in batches and appends one text line per event to memory-mapped files of
+ * segmentBytes ({@code <name>-00000.log}, {@code <name>-00001.log}, ...), keeping the last maxSegments of them. A
+ * restarted server continues after the highest index in the directory, earlier logs are never overwritten:
+ * <pre>
+ * epochMillis OPEN connection remoteAddress
+ * epochMillis REQ connection path status requestBytes responseBytes micros
+ * epochMillis CLOSE connection requests
+ * </pre>
+ * micros is the time from the complete request frame to its response being ready. Files are preallocated, the
+ * active one is padded with zero bytes until it is rolled over or the log is closed.
+ */
+@Slf4j
+public class AccessLog implements Closeable {
+    static final int MAX_PATH_CHARS = 1024;
+    private static final int MAX_LINE_BYTES = 128 + MAX_PATH_CHARS * 3;
+    private static final byte[] HEADER = ("# epochMillis OPEN connection remoteAddress"
+        + " | REQ connection path status requestBytes responseBytes micros | CLOSE connection requests\n")
+        .getBytes(StandardCharsets.US_ASCII);
+    private static final byte OPEN = 0;
+    private static final byte REQUEST = 1;
+    private static final byte CLOSE = 2;
+    private static final byte[][] EVENT_NAMES = {
+        " OPEN ".getBytes(StandardCharsets.US_ASCII),
+        " REQ ".getBytes(StandardCharsets.US_ASCII),
+        " CLOSE ".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long pollIntervalNanos;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences; // entry i is free for producer sequence s when it holds s, readable at s + 1
+    private final byte[] events;
+    private final long[] times;
+    private final long[] connections;
+    private final Object[] subjects; // path or remote address
+    private final int[] statuses;
+    private final long[] requestBytes; // request count for CLOSE
+    private final long[] responseBytes;
+    private final long[] durations;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong connectionIds = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final Thread writer;
+    private volatile long writtenEvents = 0;
+    private volatile boolean running = true;
+    private volatile boolean failed = false;
+
+    // only touched by the writer
+    private long head = 0;
+    private int segmentIndex;
+    private Path segmentPath;
+    private MappedByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+
+    public AccessLog(ApplicationConfig.AccessLogProperties properties, String name) throws IOException {
+        if (properties.segmentBytes() < HEADER.length + MAX_LINE_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small: " + properties.segmentBytes());
+        }
+        this.directory = Path.of(properties.directory());
+        this.prefix = name;
+        this.segmentBytes = properties.segmentBytes();
+        this.maxSegments = properties.maxSegments();
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(properties.pollIntervalMs());
+
+        this.capacity = Integer.highestOneBit(Math.max(2, properties.ringSize()) - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.events = new byte[capacity];
+        this.times = new long[capacity];
+        this.connections = new long[capacity];
+        this.subjects = new Object[capacity];
+        this.statuses = new int[capacity];
+        this.requestBytes = new long[capacity];
+        this.responseBytes = new long[capacity];
+        this.durations = new long[capacity];
+
+        Files.createDirectories(directory);
+        var existing = Utility.segmentIndexes(directory, prefix, ".log");
+        this.segmentIndex = existing.isEmpty() ? 0 : existing.getLast() + 1;
+        openSegment();
+        this.writer = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    /**
+     * Logs a new connection and returns the id its other events are logged with.
+     */
+    public long connectionOpened(SocketAddress remoteAddress) {
+        long connection = connectionIds.incrementAndGet();
+        publish(OPEN, connection, remoteAddress, 0, 0, 0, 0);
+        return connection;
+    }
+
+    public void request(long connection, String path, int status, long requestBytes, long responseBytes, long durationNanos) {
+        publish(REQUEST, connection, path, status, requestBytes, responseBytes, durationNanos);
+    }
+
+    public void connectionClosed(long connection, long requests) {
+        publish(CLOSE, connection, null, 0, requests, 0, 0);
+    }
+
+    public long getWrittenEvents() {
+        return writtenEvents;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private void publish(byte event, long connection, Object subject, int status, long request, long response, long duration) {
+        if (failed) return;
+        if (!running) {
+            // the writer drained the ring for the last time
+            droppedEvents.incrementAndGet();
+            return;
+        }
+        long sequence;
+        int index;
+        while (true) {
+            sequence = tail.get();
+            index = (int) sequence & mask;
+            long available = sequences.getAcquire(index) - sequence;
+            if (available == 0) {
+                if (tail.compareAndSet(sequence, sequence + 1)) break;
+            } else if (available < 0) {
+                // the writer has not drained this entry of the previous lap yet
+                droppedEvents.incrementAndGet();
+                return;
+            }
+            // otherwise another producer claimed it, retry with the new tail
+        }
+        events[index] = event;
+        times[index] = System.currentTimeMillis();
+        connections[index] = connection;
+        subjects[index] = subject;
+        statuses[index] = status;
+        requestBytes[index] = request;
+        responseBytes[index] = response;
+        durations[index] = duration;
+        sequences.setRelease(index, sequence + 1);
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (drain() == 0) LockSupport.parkNanos(pollIntervalNanos);
+            }
+            drain();
+            finishSegment();
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.error("Access log stopped: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes every published event, returns how many.
+     */
+    private int drain() throws IOException {
+        int count = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.getAcquire(index) != head + 1) break;
+            if (buffer.remaining() < MAX_LINE_BYTES) {
+                finishSegment();
+                openSegment();
+            }
+            write(index);
+            subjects[index] = null;
+            sequences.setRelease(index, head + capacity);
+            head++;
+            count++;
+        }
+        if (count > 0) writtenEvents += count;
+        return count;
+    }
+
+    private void write(int index) {
+        byte event = events[index];
+        putNumber(times[index]);
+        buffer.put(EVENT_NAMES[event]);
+        putNumber(connections[index]);
+        if (event == OPEN) {
+            buffer.put((byte) ' ');
+            putText(subjects[index] == null ? null : subjects[index].toString());
+        } else if (event == REQUEST) {
+            buffer.put((byte) ' ');
+            putText((String) subjects[index]);
+            buffer.put((byte) ' ');
+            putNumber(statuses[index]);
+            buffer.put((byte) ' ');
+            putNumber(requestBytes[index]);
+            buffer.put((byte) ' ');
+            putNumber(responseBytes[index]);
+            buffer.put((byte) ' ');
+            putNumber(TimeUnit.NANOSECONDS.toMicros(durations[index]));
+        } else {
+            buffer.put((byte) ' ');
+            putNumber(requestBytes[index]);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    private void putNumber(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes text as one column: at most MAX_PATH_CHARS characters, whitespace and control characters replaced.
+     */
+    private void putText(String text) {
+        if (text == null || text.isEmpty()) {
+            buffer.put((byte) '-');
+            return;
+        }
+        int length = Math.min(text.length(), MAX_PATH_CHARS);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                for (byte b : text.substring(i, length).getBytes(StandardCharsets.UTF_8)) {
+                    buffer.put(b >= 0 && b <= ' ' ? (byte) '_' : b);
+                }
+                return;
+            }
+            buffer.put(c <= ' ' || c == 0x7F ? (byte) '_' : (byte) c);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentPath = directory.resolve(String.format("%s-%05d.log", prefix, segmentIndex));
+        try (var channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        buffer.put(HEADER);
+        if (segmentIndex >= maxSegments) {
+            Files.deleteIfExists(directory.resolve(String.format("%s-%05d.log", prefix, segmentIndex - maxSegments)));
+        }
+        segmentIndex++;
+    }
+
+    /**
+     * Flushes the segment and cuts off its zero padding.
+     */
+    private void finishSegment() throws IOException {
+        buffer.force();
+        try (var channel = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+            channel.truncate(buffer.position());
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package server;
 
+import lombok.extern.slf4j.Slf4j;
 import model.ApplicationConfig;
 import server.interfaces.IRequestHandler;
 import server.interfaces.IServer;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.nio.channels.AsynchronousServerSocketChannel;
 import java.util.concurrent.ScheduledExecutorService;
@@ -12,26 +14,89 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+@Slf4j
 public class AsyncServer implements IServer {
+    private final ApplicationConfig config;
     private final ApplicationConfig.ServerProperties serverProperties;
     private final AsynchronousServerSocketChannel serverSocketChannel;
     private final IRequestHandler requestHandler;
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final ScheduledExecutorService scheduler;
-    private final long connectionIdleTimeoutMs;
+    private final MemoryBudget memoryBudget;
+    private final ObjectName memoryBudgetName;
+    private final RuntimeLimits runtimeLimits;
+    private final ObjectName runtimeLimitsName;
+    private final UnixSocketTransport unixSocketTransport;
+    private final TrafficRecorder trafficRecorder;
+    private final AccessLog accessLog;
 
     public AsyncServer(ApplicationConfig config, IRequestHandler requestHandler) throws IOException {
+        this.config = config;
         this.serverProperties = config.serverProperties();
         this.serverSocketChannel = AsynchronousServerSocketChannel.open();
         this.requestHandler = requestHandler;
-        this.connectionIdleTimeoutMs = serverProperties.connectionIdleTimeoutMs();
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.memoryBudget = new MemoryBudget(config.memoryProperties());
+        try {
+            this.memoryBudgetName = new ObjectName("tiny-tcp:type=MemoryBudget,port=" + serverProperties.port());
+            this.runtimeLimitsName = new ObjectName("tiny-tcp:type=RuntimeLimits,port=" + serverProperties.port());
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+        var executor = requestHandler instanceof RequestHandler handler
+            && handler.executorService() instanceof BoundedVirtualThreadExecutor bounded ? bounded : null;
+        this.runtimeLimits = new RuntimeLimits(config, memoryBudget, executor);
+        this.trafficRecorder = config.captureProperties() == null
+            ? null
+            : new TrafficRecorder(config.captureProperties(), "capture-" + serverProperties.port());
+        this.accessLog = config.accessLogProperties() == null
+            ? null
+            : new AccessLog(config.accessLogProperties(), "access-" + serverProperties.port());
+        this.unixSocketTransport = config.unixSocketProperties() == null
+            ? null
+            : new UnixSocketTransport(config, requestHandler, scheduler, memoryBudget, runtimeLimits, trafficRecorder, accessLog);
     }
 
     @Override
     public void start() throws IOException {
+        registerMBean(memoryBudget, memoryBudgetName);
+        registerMBean(runtimeLimits, runtimeLimitsName);
+        if (config.warmUpProperties() != null) {
+            new ServerWarmUp(config).run(requestHandler, scheduler, memoryBudget, runtimeLimits);
+        }
         serverSocketChannel.bind(new InetSocketAddress(serverProperties.port()));
-        serverSocketChannel.accept(this.requestHandler, new AcceptCompletionHandler(serverSocketChannel));
+        serverSocketChannel.accept(this.requestHandler, new AcceptCompletionHandler(serverSocketChannel, config, scheduler, memoryBudget, runtimeLimits, trafficRecorder, accessLog));
+        if (unixSocketTransport != null) {
+            unixSocketTransport.start();
+        }
+    }
+
+    public MemoryBudgetMXBean getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public RuntimeLimits getRuntimeLimits() {
+        return runtimeLimits;
+    }
+
+    private static void registerMBean(Object mbean, ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+        } catch (JMException e) {
+            log.warn("Failed to register {}: {}", name, e.getMessage());
+        }
+    }
+
+    private static void unregisterMBean(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // not registered
+        }
     }
 
     @Override
@@ -42,11 +107,27 @@ public class AsyncServer implements IServer {
             } catch (Exception ignore) {
                 // ignore
             }
-
+            if (unixSocketTransport != null) {
+                try {
+                    unixSocketTransport.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close unix socket: {}", e.getMessage());
+                }
+            }
+            unregisterMBean(memoryBudgetName);
+            unregisterMBean(runtimeLimitsName);
             try {
                 requestHandler.close();
             } catch (Exception e) {
                 throw new IOException(e);
+            } finally {
+                // after the handlers, so the requests they finish while closing are still recorded and logged
+                if (trafficRecorder != null) {
+                    trafficRecorder.close();
+                }
+                if (accessLog != null) {
+                    accessLog.close();
+                }
             }
             try {
                 scheduler.shutdownNow();
@@ -1,50 +1,193 @@
 package server;
 
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.Priority;
+import server.interfaces.IScheduledTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
+/**
+ * Runs at most maxConcurrentTasks tasks at a time, each on a virtual thread. Tasks beyond that are queued and a
+ * finishing task hands its slot to the next queued one:
+ * <ul>
+ * <li>the class is the most urgent {@link Priority} with waiting tasks, where every agingIntervalMs a task waited
+ * counts as one class more urgent, so BATCH work still runs while CRITICAL traffic keeps the executor saturated</li>
+ * <li>within the class flows (clients or connections, see {@link IScheduledTask#flowKey()}) take turns by deficit
+ * round-robin, a flow runs up to its weight tasks per turn, so one client pipelining hundreds of requests can not
+ * take every slot</li>
+ * </ul>
+ * Tasks that are not {@link IScheduledTask}s are NORMAL and share one flow.
+ * <p>
+ * maxConcurrentTasks can be changed while tasks run: new slots start queued tasks right away, removed slots are
+ * given up as their running tasks finish.
+ */
+@Slf4j
 public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+    private static final Priority[] PRIORITIES = Priority.values();
+
     private final ExecutorService delegate;
-    private final Semaphore semaphore;
+    private final long agingIntervalNanos;
+    private final int defaultWeight;
+    private final Map<String, Integer> clientWeights;
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private final List<FairQueue> queues = new ArrayList<>(PRIORITIES.length);
+    private int maxConcurrentTasks;
+    private int running = 0;
+    private int queued = 0;
     private volatile boolean isShutdown = false;
 
     public BoundedVirtualThreadExecutor(int maxConcurrentTasks) {
+        this(maxConcurrentTasks, ApplicationConfig.SchedulerProperties.DEFAULT);
+    }
+
+    public BoundedVirtualThreadExecutor(int maxConcurrentTasks, ApplicationConfig.SchedulerProperties properties) {
+        if (maxConcurrentTasks <= 0) throw new IllegalArgumentException("maxConcurrentTasks must be positive");
         this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
-        this.semaphore = new Semaphore(maxConcurrentTasks);
+        this.maxConcurrentTasks = maxConcurrentTasks;
+        this.agingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(properties.agingIntervalMs());
+        this.defaultWeight = properties.defaultWeight();
+        this.clientWeights = properties.clientWeights();
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new FairQueue());
+        }
     }
 
     @Override
     public void execute(Runnable command) {
         if (isShutdown) throw new RejectedExecutionException("Executor is shut down");
 
-        // Do not block the caller (often an I/O completion thread).
-        // Instead, submit a virtual thread that acquires the permit and runs the task.
-        delegate.execute(() -> {
-            boolean acquired = false;
+        // Never block the caller (often an I/O completion thread): either start the task or queue it.
+        lock.lock();
+        try {
+            if (running >= maxConcurrentTasks) {
+                if (command instanceof IScheduledTask task) {
+                    queues.get(task.priority().ordinal()).add(task.flowKey(), command);
+                } else {
+                    queues.get(Priority.NORMAL.ordinal()).add(null, command);
+                }
+                queued++;
+                return;
+            }
+            running++;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            delegate.execute(new Worker(command));
+        } catch (RejectedExecutionException e) {
+            lock.lock();
             try {
-                semaphore.acquire();
-                acquired = true;
-                command.run();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RejectedExecutionException("Interrupted while waiting for permit", e);
+                running--;
             } finally {
-                if (acquired) semaphore.release();
+                lock.unlock();
             }
-        });
+            throw e;
+        }
     }
 
     public <T> CompletableFuture<T> submit(Supplier<T> supplier) {
         return CompletableFuture.supplyAsync(supplier, this);
     }
 
+    public int getMaxConcurrentTasks() {
+        lock.lock();
+        try {
+            return maxConcurrentTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+        if (maxConcurrentTasks <= 0) throw new IllegalArgumentException("maxConcurrentTasks must be positive");
+        List<Runnable> started = new ArrayList<>();
+        lock.lock();
+        try {
+            this.maxConcurrentTasks = maxConcurrentTasks;
+            while (running < maxConcurrentTasks && queued > 0) {
+                queued--;
+                running++;
+                started.add(mostUrgentQueue().poll());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (var task : started) {
+            try {
+                delegate.execute(new Worker(task));
+            } catch (RejectedExecutionException e) {
+                // shut down meanwhile, like the tasks shutdownNow() drops
+                lock.lock();
+                try {
+                    running--;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tasks waiting for a slot.
+     */
+    public int getQueuedTasks() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The next task to run in a slot that just became free, null (and the slot given up) if nothing is queued or
+     * the slot was removed.
+     */
+    private Runnable next() {
+        lock.lock();
+        try {
+            if (queued == 0 || running > maxConcurrentTasks) {
+                running--;
+                return null;
+            }
+            queued--;
+            return mostUrgentQueue().poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // guarded by lock
+    private FairQueue mostUrgentQueue() {
+        long now = System.nanoTime();
+        FairQueue best = null;
+        long bestRank = Long.MAX_VALUE;
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            var queue = queues.get(i);
+            if (queue.isEmpty()) continue;
+            long rank = agingIntervalNanos > 0 ? i - (now - queue.nextEnqueuedAt()) / agingIntervalNanos : i;
+            if (rank < bestRank) {
+                best = queue;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
     @Override
     public void shutdown() {
         isShutdown = true;
@@ -54,7 +197,18 @@ public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
     @Override
     public List<Runnable> shutdownNow() {
         isShutdown = true;
-        return delegate.shutdownNow();
+        List<Runnable> notRun = new ArrayList<>();
+        lock.lock();
+        try {
+            for (var queue : queues) {
+                queue.drainTo(notRun);
+            }
+            queued = 0;
+        } finally {
+            lock.unlock();
+        }
+        notRun.addAll(delegate.shutdownNow());
+        return notRun;
     }
 
     @Override
@@ -71,4 +225,102 @@ public class BoundedVirtualThreadExecutor extends AbstractExecutorService {
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
         return delegate.awaitTermination(timeout, unit);
     }
+
+    private int weightOf(Object flowKey) {
+        return flowKey instanceof String clientId ? Math.max(1, clientWeights.getOrDefault(clientId, defaultWeight)) : defaultWeight;
+    }
+
+    private record QueuedTask(Runnable command, long enqueuedAt) {}
+
+    /**
+     * Tasks of one flow and its deficit counter, dropped from the class once it has nothing queued.
+     */
+    private static final class Flow {
+        private final Object key;
+        private final int weight;
+        private final ArrayDeque<QueuedTask> tasks = new ArrayDeque<>();
+        private int deficit = 0;
+
+        private Flow(Object key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * One priority class: deficit round-robin over the flows with queued tasks. Every task costs one unit, a flow
+     * at the head of the round gets its weight in units and keeps the head until they are spent.
+     */
+    // guarded by lock
+    private final class FairQueue {
+        private final Map<Object, Flow> flows = new HashMap<>();
+        private final ArrayDeque<Flow> round = new ArrayDeque<>();
+
+        void add(Object flowKey, Runnable command) {
+            var flow = flows.get(flowKey);
+            if (flow == null) {
+                flow = new Flow(flowKey, weightOf(flowKey));
+                flows.put(flowKey, flow);
+                round.add(flow);
+            }
+            flow.tasks.add(new QueuedTask(command, System.nanoTime()));
+        }
+
+        boolean isEmpty() {
+            return round.isEmpty();
+        }
+
+        /**
+         * When the task served next was queued, used for aging the class.
+         */
+        long nextEnqueuedAt() {
+            return round.peek().tasks.peek().enqueuedAt();
+        }
+
+        Runnable poll() {
+            var flow = round.peek();
+            if (flow.deficit == 0) flow.deficit = flow.weight;
+            var task = flow.tasks.poll();
+            flow.deficit--;
+            if (flow.tasks.isEmpty()) {
+                round.poll();
+                flows.remove(flow.key);
+            } else if (flow.deficit == 0) {
+                round.add(round.poll());
+            }
+            return task.command();
+        }
+
+        void drainTo(List<Runnable> tasks) {
+            for (var flow : round) {
+                flow.tasks.forEach(task -> tasks.add(task.command()));
+            }
+            round.clear();
+            flows.clear();
+        }
+    }
+
+    /**
+     * Virtual thread owning one slot, it keeps running queued tasks until none is left.
+     */
+    private final class Worker implements Runnable {
+        private final Runnable first;
+
+        private Worker(Runnable first) {
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            var task = first;
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.error("Task failed: {}", t.getMessage(), t);
+                }
+                task = next();
+            }
+        }
+    }
 }
@@ -4,12 +4,25 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import model.ApplicationConfig;
 
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Pool of read and write buffers that follows demand: it keeps minPoolSize buffers and grows up to maxPoolSize (plus
+ * 25% for spikes) by allocating on misses. A background task keeps at least as many idle buffers as the last
+ * interval missed, so a repeated burst hits the pool while the buffers of the first one are still lent out, and
+ * after shrinkAfterIntervals intervals without a miss releases half of the buffers that stayed idle all along.
+ * Counters are exposed over JMX as {@code tiny-tcp:type=ByteBufferPool}.
+ */
 @Slf4j
-public class ByteBufferPool {
+public class ByteBufferPool implements ByteBufferPoolMXBean {
     private static ByteBufferPool instance;
 
     public static ByteBufferPool getInstance() {
@@ -25,64 +38,207 @@ public class ByteBufferPool {
         }
 
         instance = new ByteBufferPool(applicationConfig);
-        new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(1000);
-                    log.debug("ByteBufferPool Size: {}", instance.byteBuffers.size());
-                } catch (InterruptedException e) {
-                    // do nothing
-                }
-            }
-        }).start();
+        var properties = applicationConfig.byteBufferProperties();
+        var scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("buffer-pool").daemon().factory());
+        scheduler.scheduleWithFixedDelay(instance::adapt, properties.adaptIntervalMs(), properties.adaptIntervalMs(), TimeUnit.MILLISECONDS);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("tiny-tcp:type=ByteBufferPool"));
+        } catch (JMException e) {
+            log.warn("Failed to register the ByteBufferPool MBean: {}", e.getMessage());
+        }
     }
 
-    private final LinkedBlockingQueue<ByteBuffer> byteBuffers;
+    // array backed, offer/poll do not allocate nodes; replaced by a queue of the new capacity on resize()
+    private volatile ArrayBlockingQueue<ByteBuffer> byteBuffers;
 
-    private final int maxPoolSize;
+    private volatile int maxPoolSize;
+    private volatile int configuredMaxPoolSize;
+
+    @Getter
+    private volatile int minPoolSize;
 
     @Getter
     private final int bufferSize;
 
-    private final AtomicInteger totalBufferCreated = new AtomicInteger();
+    private final int shrinkAfterIntervals;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder returns = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // guarded by this, state of adapt()
+    private long lastMisses = 0;
+    private int quietIntervals = 0;
+    private int minIdle = Integer.MAX_VALUE; // fewest idle buffers seen in the quiet intervals
 
     private ByteBufferPool(ApplicationConfig config) {
-        this.bufferSize = config.byteBufferProperties().bufferSize();
-        this.maxPoolSize = (int) (config.byteBufferProperties().maxPoolSize() * 1.25); // keeping a 25% extra for request spike
+        var properties = config.byteBufferProperties();
+        this.bufferSize = properties.bufferSize();
+        this.configuredMaxPoolSize = properties.maxPoolSize();
+        this.maxPoolSize = (int) (configuredMaxPoolSize * 1.25); // keeping a 25% extra for request spike
+        this.shrinkAfterIntervals = properties.shrinkAfterIntervals();
 
-        byteBuffers = new LinkedBlockingQueue<>(this.maxPoolSize);
+        byteBuffers = new ArrayBlockingQueue<>(this.maxPoolSize);
 
-        int poolSize = config.byteBufferProperties().minPoolSize();
-        while (poolSize-- > 0) {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(bufferSize);
-            byteBuffers.add(byteBuffer);
-            totalBufferCreated.incrementAndGet();
-        }
+        this.minPoolSize = properties.minPoolSize();
+        fill(minPoolSize);
     }
 
     public ByteBuffer get() {
         var byteBuffer = byteBuffers.poll();
         if (byteBuffer != null) {
+            hits.increment();
             return byteBuffer;
         }
 
-        if (totalBufferCreated.get() < maxPoolSize) {
-            synchronized (byteBuffers) {
-                if (totalBufferCreated.get() < maxPoolSize) {
-                    totalBufferCreated.incrementAndGet();
-                    return ByteBuffer.allocate(bufferSize);
-                }
+        synchronized (this) {
+            boolean pooled = byteBuffers.size() + getLentBuffers() < maxPoolSize;
+            misses.increment();
+            if (pooled) {
+                allocations.increment();
+                return ByteBuffer.allocate(bufferSize);
             }
         }
 
         // Do NOT block I/O completion threads here; allocate a temporary buffer.
-        // It will be GC'ed if the pool is full upon returnBuffer().
+        // It is only kept if the pool has room again when it is returned.
+        overflows.increment();
         return ByteBuffer.allocate(bufferSize);
     }
 
     @SuppressWarnings("java:S899")
     public void returnBuffer(ByteBuffer byteBuffer) {
         byteBuffer.clear();
-        byteBuffers.offer(byteBuffer);
+        returns.increment();
+        if (!byteBuffers.offer(byteBuffer)) {
+            discards.increment();
+        }
+    }
+
+    /**
+     * Runs every adaptIntervalMs: grows the pool after misses, shrinks it after sustained low demand.
+     */
+    private synchronized void adapt() {
+        try {
+            long totalMisses = misses.sum();
+            long newMisses = totalMisses - lastMisses;
+            lastMisses = totalMisses;
+            int idle = byteBuffers.size();
+            if (newMisses > 0) {
+                quietIntervals = 0;
+                minIdle = Integer.MAX_VALUE;
+                int added = fill((int) Math.min(newMisses, maxPoolSize));
+                if (added > 0) log.debug("ByteBufferPool grew by {} buffers after {} misses", added, newMisses);
+                return;
+            }
+
+            minIdle = Math.min(minIdle, idle);
+            if (++quietIntervals < shrinkAfterIntervals) return;
+            long aboveMin = idle + getLentBuffers() - minPoolSize;
+            int released = release((int) Math.min(minIdle / 2, aboveMin));
+            if (released > 0) log.debug("ByteBufferPool released {} idle buffers", released);
+            quietIntervals = 0;
+            minIdle = Integer.MAX_VALUE;
+        } catch (RuntimeException e) {
+            log.warn("ByteBufferPool adaptation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Changes the pool size at runtime: buffers are added up to the new minimum right away, and above the new
+     * maximum the pool keeps fewer buffers. Buffers returned to the old queue while it is replaced are left to
+     * the garbage collector. The buffer size can not change, connections hold buffers of the current one.
+     */
+    public synchronized void resize(int minPoolSize, int maxPoolSize) {
+        if (minPoolSize < 0 || maxPoolSize <= 0 || minPoolSize > maxPoolSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minPoolSize + ", max=" + maxPoolSize);
+        }
+        int capacity = (int) (maxPoolSize * 1.25);
+        if (capacity != this.maxPoolSize) {
+            var previous = byteBuffers;
+            var resized = new ArrayBlockingQueue<ByteBuffer>(capacity);
+            byteBuffers = resized;
+            previous.drainTo(resized, capacity);
+            evictions.add(previous.size());
+            previous.clear();
+            this.maxPoolSize = capacity;
+        }
+        this.minPoolSize = minPoolSize;
+        this.configuredMaxPoolSize = maxPoolSize;
+        fill(Math.max(0, minPoolSize - (int) getLentBuffers()));
+    }
+
+    /**
+     * Allocates buffers until idleBuffers are idle or the pool is full, returns how many.
+     */
+    private int fill(int idleBuffers) {
+        int added = 0;
+        while (byteBuffers.size() < idleBuffers && byteBuffers.size() + getLentBuffers() < maxPoolSize
+            && byteBuffers.offer(ByteBuffer.allocate(bufferSize))) {
+            allocations.increment();
+            added++;
+        }
+        return added;
+    }
+
+    private int release(int count) {
+        int released = 0;
+        while (released < count && byteBuffers.poll() != null) {
+            released++;
+        }
+        evictions.add(released);
+        return released;
+    }
+
+    /**
+     * The configured maxPoolSize, the pool keeps up to 25% more.
+     */
+    @Override
+    public int getMaxPoolSize() {
+        return configuredMaxPoolSize;
+    }
+
+    @Override
+    public int getIdleBuffers() {
+        return byteBuffers.size();
+    }
+
+    @Override
+    public long getLentBuffers() {
+        return Math.max(0, hits.sum() + misses.sum() - returns.sum());
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    @Override
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    @Override
+    public long getDiscards() {
+        return discards.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
     }
 }
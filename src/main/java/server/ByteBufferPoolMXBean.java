@@ -0,0 +1,53 @@
+package server;
+
+/**
+ * JMX view of the {@link ByteBufferPool}: its size and counters since the start, to size minPoolSize and
+ * maxPoolSize from actual demand. The sizes are changed through {@link RuntimeLimitsMXBean}.
+ */
+public interface ByteBufferPoolMXBean {
+    int getBufferSize();
+
+    int getMinPoolSize();
+
+    int getMaxPoolSize();
+
+    /**
+     * Buffers in the pool right now.
+     */
+    int getIdleBuffers();
+
+    /**
+     * Buffers taken from the pool and not returned yet.
+     */
+    long getLentBuffers();
+
+    /**
+     * Buffers served from the pool.
+     */
+    long getHits();
+
+    /**
+     * Buffers allocated because the pool was empty.
+     */
+    long getMisses();
+
+    /**
+     * Buffers allocated for the pool, on misses, up front and when topping up after misses.
+     */
+    long getAllocations();
+
+    /**
+     * Misses while more than the maximum was lent out, their buffers are only kept if the pool has room later.
+     */
+    long getOverflows();
+
+    /**
+     * Returned buffers dropped because the pool was full.
+     */
+    long getDiscards();
+
+    /**
+     * Idle buffers released after low demand or a smaller maximum.
+     */
+    long getEvictions();
+}
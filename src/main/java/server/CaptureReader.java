@@ -0,0 +1,93 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Reads the frames recorded by a {@link TrafficRecorder}, segment by segment in index order. Every frame comes with
+ * its offset from the start of the capture it was recorded in; a directory holds one capture per server run, so
+ * the capture start changes between the segments of different runs.
+ */
+public final class CaptureReader {
+    private final Path capture;
+    private final Iterator<Integer> segmentIndexes;
+    private Path segment;
+    private MappedByteBuffer buffer;
+    private long captureStartEpochMillis;
+    private long offsetNanos;
+
+    /**
+     * @param capture path prefix of the segments, e.g. {@code captures/capture-9998}
+     */
+    public CaptureReader(Path capture) throws IOException {
+        this.capture = capture;
+        var directory = capture.toAbsolutePath().getParent();
+        this.segmentIndexes = Utility.segmentIndexes(directory, capture.getFileName().toString(), ".bin").iterator();
+    }
+
+    /**
+     * Moves to the next frame.
+     *
+     * @return the complete request frame, a view of the segment file, or null after the last one
+     */
+    public ByteBuffer next() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.remaining() >= TrafficRecorder.RECORD_HEADER_BYTES) {
+                long offset = buffer.getLong();
+                int frameLength = buffer.getInt();
+                if (frameLength != 0) {
+                    if (frameLength < 0 || frameLength > buffer.remaining()) {
+                        throw new IOException("Truncated frame in " + segment);
+                    }
+                    var frame = buffer.slice(buffer.position(), frameLength);
+                    buffer.position(buffer.position() + frameLength);
+                    offsetNanos = offset;
+                    return frame;
+                }
+            }
+            if (!segmentIndexes.hasNext()) {
+                buffer = null;
+                return null;
+            }
+            openSegment(segmentIndexes.next());
+        }
+    }
+
+    private void openSegment(int index) throws IOException {
+        segment = capture.resolveSibling(String.format("%s-%05d.bin", capture.getFileName(), index));
+        try (var channel = FileChannel.open(segment)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < TrafficRecorder.SEGMENT_HEADER_BYTES
+            || buffer.getInt(0) != TrafficRecorder.MAGIC || buffer.getInt(4) != TrafficRecorder.VERSION) {
+            throw new IOException("Not a traffic capture segment: " + segment);
+        }
+        captureStartEpochMillis = buffer.getLong(8);
+        buffer.position(TrafficRecorder.SEGMENT_HEADER_BYTES);
+    }
+
+    /**
+     * The segment file of the current frame.
+     */
+    public Path segment() {
+        return segment;
+    }
+
+    /**
+     * When the capture of the current frame started, the same for all segments written by one server run.
+     */
+    public long captureStartEpochMillis() {
+        return captureStartEpochMillis;
+    }
+
+    /**
+     * Time from the start of its capture to the current frame.
+     */
+    public long offsetNanos() {
+        return offsetNanos;
+    }
+}
@@ -0,0 +1,60 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Re-reads an application.json whenever its modification time or size changes and passes it on, e.g. to
+ * {@link RuntimeLimits#apply(ApplicationConfig)}. A file that can not be read or parsed, or that the consumer
+ * rejects, is logged and the previous limits stay; the next change is tried again.
+ */
+@Slf4j
+public class ConfigFileWatcher implements Closeable {
+    private final Path path;
+    private final Consumer<ApplicationConfig> consumer;
+    private final ScheduledExecutorService scheduler;
+
+    // only touched by the scheduler
+    private long lastModified;
+    private long lastSize;
+
+    public ConfigFileWatcher(Path path, long pollIntervalMs, Consumer<ApplicationConfig> consumer) throws IOException {
+        this.path = path;
+        this.consumer = consumer;
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.lastSize = attributes.size();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("config-watcher").daemon().factory());
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        try {
+            var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (modified == lastModified && attributes.size() == lastSize) return;
+            lastModified = modified;
+            lastSize = attributes.size();
+            var config = Utility.OBJECT_MAPPER.readValue(path.toFile(), ApplicationConfig.class);
+            log.info("Reloading {}", path);
+            consumer.accept(config);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,734 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.InternalServerResponse;
+import model.RequestAccumulator;
+import model.ServerResponse;
+import server.interfaces.IRequestHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * State of one client connection. Pipelined requests are dispatched as soon as their frame is complete and their
+ * responses are written back in request order. Reading pauses while the connection has too many requests in
+ * flight or too many response bytes waiting for a slow reader, and resumes once it drained below the low
+ * watermark, so one greedy or slow client cannot fill the heap or the executor.
+ * <p>
+ * Every frame's payload is admitted against the server's {@link MemoryBudget} before it is allocated: frames above
+ * the per-frame limit are answered with 413 and end the connection, while the global budget is exhausted reading
+ * pauses until memory is released.
+ * <p>
+ * A frame that is not in the read buffer in full has its header block read and checked first
+ * ({@link IRequestHandler#checkHeader}), so a request for an unknown route or failing a route's checks is answered
+ * before its body arrives and the body is skipped instead of buffered.
+ * <p>
+ * Responses that are ready at the head of the queue are coalesced into a single gathering write, so pipelined or
+ * high fan-in traffic pays one syscall and one completion per batch instead of per response.
+ * <p>
+ * Connections subscribed to {@link PubSub} topics also get push frames, queued separately from the responses (at
+ * most the configured number of messages and bytes) and added to the same gathering writes between responses.
+ */
+@Slf4j
+public class Connection {
+    private static final byte[] HANDLER_FAILED = "Unhandled server error".getBytes(StandardCharsets.UTF_8);
+
+    private final ConnectionChannel channel;
+    private final IRequestHandler requestHandler;
+    private final RuntimeLimits runtimeLimits; // backpressure limits and idle timeout, read on every use
+    private final ApplicationConfig.WriteProperties writeProperties;
+    private final ScheduledExecutorService scheduler;
+    private final MemoryBudget memoryBudget;
+    private final TrafficRecorder trafficRecorder;
+    private final AccessLog accessLog;
+    private final long connectionId; // in the access log
+    private final int spillThresholdBytes;
+    private final Path spillDirectory;
+    private final ByteBuffer readBuffer;
+    private final RequestAccumulator accumulator;
+    private final ReadCompletionHandler readHandler;
+    private final WriteCompletionHandler writeHandler;
+
+    // guarded by this
+    private final ArrayDeque<PendingResponse> pending = new ArrayDeque<>(); // in request order
+    private final ArrayDeque<PendingResponse> freeSlots = new ArrayDeque<>(); // written slots for reuse
+    private long queuedResponseBytes = 0;
+    private long responses = 0;
+    private boolean readerActive = true; // a read is outstanding or buffered frames are being parsed
+    private boolean readPaused = false;
+    private boolean writing = false;
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+    private RequestAccumulator parkedAccumulator; // frame waiting for room in the memory budget
+    private final PendingResponse[] batchSlots;
+    private int batchSlotCount = 0;
+    private ByteBuffer[] writeBatch;
+    private int writeBatchSize = 0;
+    private final ArrayDeque<ByteBuffer> pushQueue = new ArrayDeque<>(); // shared push frames, in publish order
+    private long queuedPushBytes = 0;
+    private int batchPushCount = 0;
+    private Set<String> topics; // null until the connection subscribed
+    private PubSub pubSub;
+
+    // only touched by the reader
+    private long frameReservation = 0; // reserved for the frame being read
+
+    Connection(
+        ConnectionChannel channel,
+        IRequestHandler requestHandler,
+        ApplicationConfig config,
+        ScheduledExecutorService scheduler,
+        MemoryBudget memoryBudget,
+        RuntimeLimits runtimeLimits,
+        TrafficRecorder trafficRecorder,
+        AccessLog accessLog
+    ) {
+        this.channel = channel;
+        this.requestHandler = requestHandler;
+        this.runtimeLimits = runtimeLimits;
+        this.writeProperties = config.writeProperties();
+        this.scheduler = scheduler;
+        this.memoryBudget = memoryBudget;
+        this.trafficRecorder = trafficRecorder;
+        this.accessLog = accessLog;
+        this.connectionId = accessLog == null ? 0 : accessLog.connectionOpened(channel.remoteAddress());
+        this.batchSlots = new PendingResponse[Math.max(1, writeProperties.maxBatchResponses())];
+        this.writeBatch = new ByteBuffer[batchSlots.length];
+        var requestBodyProperties = config.requestBodyProperties();
+        this.spillThresholdBytes = requestBodyProperties.spillThresholdBytes();
+        this.spillDirectory = requestBodyProperties.spillDirectory() == null ? null : Path.of(requestBodyProperties.spillDirectory());
+        this.accumulator = new RequestAccumulator(spillThresholdBytes, spillDirectory);
+        this.readBuffer = ByteBufferPool.getInstance().get();
+        this.readHandler = new ReadCompletionHandler(this);
+        this.writeHandler = new WriteCompletionHandler(this);
+    }
+
+    public void start() {
+        read(accumulator);
+    }
+
+    /**
+     * The connection's accumulator reset for the next frame, frames are read one after the other so one instance
+     * is reused for all of them.
+     */
+    private RequestAccumulator newAccumulator() {
+        accumulator.reset();
+        return accumulator;
+    }
+
+    private void read(RequestAccumulator accumulator) {
+        synchronized (this) {
+            if (closed) {
+                discardFrame(accumulator);
+                stopReading();
+                return;
+            }
+        }
+        channel.read(readBuffer, runtimeLimits.connectionIdleTimeoutMs(), TimeUnit.MILLISECONDS, accumulator, readHandler);
+    }
+
+    /**
+     * Called with freshly read bytes (readBuffer in write mode), parses and dispatches every complete frame.
+     */
+    void onRead(RequestAccumulator accumulator) {
+        readBuffer.flip();
+        processBuffered(accumulator);
+    }
+
+    void onEndOfStream(RequestAccumulator accumulator) {
+        discardFrame(accumulator);
+        close();
+        stopReading();
+    }
+
+    void onReadFailed(Throwable exc, RequestAccumulator accumulator) {
+        if (!isClosed()) log.error(exc.getMessage(), exc);
+        discardFrame(accumulator);
+        close();
+        stopReading();
+    }
+
+    /**
+     * A read timed out. Only an idle connection is closed, one that is waiting on its own responses or is
+     * subscribed to topics keeps reading.
+     */
+    void onReadTimeout(RequestAccumulator accumulator) {
+        synchronized (this) {
+            if (!closed && (!pending.isEmpty() || topics != null && !topics.isEmpty())) {
+                read(accumulator);
+                return;
+            }
+        }
+        log.debug("Closing idle connection");
+        discardFrame(accumulator);
+        close();
+        stopReading();
+    }
+
+    private void processBuffered(RequestAccumulator accumulator) {
+        while (true) {
+            try {
+                accumulator.append(readBuffer);
+
+                // parse lengths if not yet parsed
+                accumulator.parseHeaderLength();
+                accumulator.parseBodyLength();
+
+                if (accumulator.isBodyLengthRead() && !accumulator.isHeaderAllocated()) {
+                    if (!hasAcceptableLengths(accumulator)) return;
+                    // a frame that is here in full is taken in one go, others have their header checked first
+                    boolean whole = accumulator.bodyLength() == 0 || readBuffer.remaining() >= accumulator.frameLength() - 8;
+                    if (!admit(accumulator, whole ? accumulator.payloadHeapBytes() : accumulator.headerLength())) return;
+                    if (whole) {
+                        accumulator.allocatePayload();
+                    } else {
+                        accumulator.allocateHeader();
+                    }
+                    accumulator.append(readBuffer);
+                }
+                if (accumulator.isHeaderComplete() && !accumulator.isPayloadAllocated()) {
+                    if (!accumulator.isHeaderChecked()) {
+                        accumulator.markHeaderChecked();
+                        if (!checkHeader(accumulator)) return;
+                    }
+                    if (!accumulator.isBodySkipped()) {
+                        if (!admit(accumulator, accumulator.payloadHeapBytes() - accumulator.headerLength())) return;
+                        accumulator.allocatePayload();
+                    }
+                    accumulator.append(readBuffer);
+                }
+            } catch (UncheckedIOException e) {
+                log.error("Failed to buffer request: {}", e.getMessage(), e);
+                discardFrame(accumulator);
+                close();
+                stopReading();
+                return;
+            }
+
+            if (!accumulator.isComplete()) break;
+
+            // a skipped frame was answered when its header was rejected
+            if (!accumulator.isBodySkipped()) {
+                if (trafficRecorder != null) trafficRecorder.record(accumulator);
+                dispatch(accumulator);
+            }
+            accumulator = newAccumulator();
+
+            synchronized (this) {
+                if (closed) {
+                    stopReading();
+                    return;
+                }
+                if (isOverLimit()) {
+                    // keep the unread bytes for when the connection drained
+                    readBuffer.compact();
+                    readPaused = true;
+                    readerActive = false;
+                    return;
+                }
+            }
+            if (!readBuffer.hasRemaining()) break;
+        }
+        readBuffer.clear();
+        read(accumulator);
+    }
+
+    /**
+     * Rejects frames with negative lengths or above the frame size limit, returns false if reading stopped.
+     */
+    private boolean hasAcceptableLengths(RequestAccumulator accumulator) {
+        if (!accumulator.hasValidLengths()) {
+            reject(400, "Malformed frame: negative length");
+            return false;
+        }
+        if (memoryBudget.isFrameTooLarge(accumulator.frameLength())) {
+            reject(413, "Frame of " + accumulator.frameLength() + " bytes exceeds the limit of " + memoryBudget.getMaxFrameBytes());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reserves bytes of the frame's payload in the memory budget. Returns false if reading is paused until the
+     * budget has room again.
+     */
+    private boolean admit(RequestAccumulator accumulator, long bytes) {
+        if (memoryBudget.tryReserve(bytes)) {
+            frameReservation += bytes;
+            return true;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                discardFrame(accumulator);
+                stopReading();
+                return false;
+            }
+            // keep the unread bytes and the half read frame for when memory was released
+            readBuffer.compact();
+            parkedAccumulator = accumulator;
+            readerActive = false;
+        }
+        memoryBudget.onRelease(bytes, this::scheduleResumeAfterRelease);
+        return false;
+    }
+
+    private void scheduleResumeAfterRelease() {
+        try {
+            scheduler.execute(this::resumeAfterRelease);
+        } catch (RejectedExecutionException e) {
+            // server is shutting down
+            close();
+        }
+    }
+
+    private void resumeAfterRelease() {
+        RequestAccumulator accumulator;
+        synchronized (this) {
+            accumulator = parkedAccumulator;
+            parkedAccumulator = null;
+            // null once close() discarded the parked frame
+            if (accumulator == null) return;
+            readerActive = true;
+        }
+        readBuffer.flip();
+        processBuffered(accumulator);
+    }
+
+    /**
+     * Answers a frame that can not be read with an error and stops reading, the rest of the stream is not
+     * trusted anymore, so the connection closes once the response was written.
+     */
+    private void reject(int status, String message) {
+        memoryBudget.frameRejected();
+        log.debug("Rejecting frame: {}", message);
+        PendingResponse slot;
+        synchronized (this) {
+            slot = acquireSlot();
+            pending.add(slot);
+        }
+        var internalServerResponse = new InternalServerResponse(status, message.getBytes(StandardCharsets.UTF_8));
+        onResponse(slot, new ServerResponse(null, internalServerResponse, false));
+        stopReading();
+    }
+
+    private void discardFrame(RequestAccumulator accumulator) {
+        accumulator.discard();
+        memoryBudget.release(frameReservation);
+        frameReservation = 0;
+    }
+
+    /**
+     * Runs the request handler's header checks on a frame whose body is still to come. A rejected frame is answered
+     * right away and its body skipped without being buffered. Returns false if reading stopped because the header
+     * block could not be parsed.
+     */
+    private boolean checkHeader(RequestAccumulator accumulator) {
+        ServerResponse rejection;
+        try {
+            rejection = requestHandler.checkHeader(accumulator);
+        } catch (Exception e) {
+            log.error("Failed to check request header: {}", e.getMessage(), e);
+            discardFrame(accumulator);
+            close();
+            stopReading();
+            return false;
+        }
+        if (rejection == null) return true;
+        accumulator.skipBody();
+        onResponse(reserveSlot(accumulator), rejection);
+        return true;
+    }
+
+    /**
+     * Queues the response slot of a frame and moves the frame's memory reservation to it.
+     */
+    private PendingResponse reserveSlot(RequestAccumulator accumulator) {
+        PendingResponse slot;
+        synchronized (this) {
+            slot = acquireSlot();
+            pending.add(slot);
+        }
+        slot.chargedBytes = frameReservation;
+        frameReservation = 0;
+        if (accessLog != null) {
+            slot.requestBytes = accumulator.frameLength();
+            slot.startNanos = System.nanoTime();
+        }
+        return slot;
+    }
+
+    private void dispatch(RequestAccumulator accumulator) {
+        var slot = reserveSlot(accumulator);
+        try {
+            requestHandler.handleRequest(accumulator, slot);
+        } catch (Exception e) {
+            // malformed frame, the stream can not be trusted anymore
+            log.error("Failed to dispatch request: {}", e.getMessage(), e);
+            accumulator.discard();
+            memoryBudget.release(slot.chargedBytes);
+            close();
+        }
+    }
+
+    private void onResponse(PendingResponse slot, ServerResponse response) {
+        final ByteBufferPool bufferPool = ByteBufferPool.getInstance();
+        final int payloadSize = response.size();
+        final int totalSize = 4 /* response status */ + 4 /* payload length */ + payloadSize;
+        final ByteBuffer[] bodyBuffers = response.getBodyBuffers();
+        if (accessLog != null) {
+            var path = response.serverRequest() == null ? null : response.serverRequest().path();
+            long durationNanos = slot.startNanos == 0 ? 0 : System.nanoTime() - slot.startNanos;
+            accessLog.request(connectionId, path, response.statusCode(), slot.requestBytes, totalSize, durationNanos);
+        }
+
+        ByteBuffer writeBuffer;
+        // heap held until the response is written: the byte[] body and a temp buffer if the pool's is too small
+        long heapBytes = bodyBuffers == null ? payloadSize : 0;
+        // choose buffer: pool or temp, zero-copy bodies only need room for the 8 byte prefix
+        if (bodyBuffers != null || totalSize <= bufferPool.getBufferSize()) {
+            writeBuffer = bufferPool.get();
+        } else {
+            writeBuffer = ByteBuffer.allocate(totalSize);
+            heapBytes += totalSize;
+        }
+        memoryBudget.reserve(heapBytes);
+
+        writeBuffer.clear();
+        writeBuffer.putInt(response.statusCode()); // status code
+        writeBuffer.putInt(payloadSize); // length prefix
+        if (bodyBuffers == null) {
+            writeBuffer.put(response.getBytes()); // body
+        }
+        writeBuffer.flip();
+
+        synchronized (this) {
+            slot.response = response;
+            slot.buffer = writeBuffer;
+            slot.bodyBuffers = bodyBuffers;
+            slot.size = totalSize;
+            slot.chargedBytes += heapBytes;
+            responses++;
+            if (closed) {
+                release(slot);
+                return;
+            }
+            queuedResponseBytes += totalSize;
+        }
+        writeNext(false);
+    }
+
+    private void writeNext(boolean flushNow) {
+        int count;
+        synchronized (this) {
+            if (writing || closed) return;
+
+            // collect the responses that are ready, in order, from the head of the queue
+            count = 0;
+            long bytes = 0;
+            for (var slot : pending) {
+                if (slot.buffer == null || count == batchSlots.length) break;
+                if (count > 0 && bytes + slot.size > writeProperties.maxBatchBytes()) break;
+                batchSlots[count++] = slot;
+                bytes += slot.size;
+            }
+            // and the queued push frames that still fit
+            int pushes = 0;
+            for (var frame : pushQueue) {
+                if (count + pushes == batchSlots.length) break;
+                if (count + pushes > 0 && bytes + frame.remaining() > writeProperties.maxBatchBytes()) break;
+                pushes++;
+                bytes += frame.remaining();
+            }
+            if (count == 0 && pushes == 0) return;
+
+            if (!flushNow && count > 0 && shouldWaitForMore(count)) {
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    scheduler.schedule(this::flush, writeProperties.maxFlushDelayMicros(), TimeUnit.MICROSECONDS);
+                }
+                return;
+            }
+            writing = true;
+            batchSlotCount = count;
+            batchPushCount = pushes;
+            writeBatchSize = 0;
+            for (int i = 0; i < count; i++) {
+                addToWriteBatch(batchSlots[i].buffer);
+                if (batchSlots[i].bodyBuffers != null) {
+                    for (var bodyBuffer : batchSlots[i].bodyBuffers) addToWriteBatch(bodyBuffer);
+                }
+            }
+            var frames = pushQueue.iterator();
+            for (int i = 0; i < pushes; i++) {
+                addToWriteBatch(frames.next());
+            }
+        }
+        channel.write(writeBatch, 0, writeBatchSize, null, writeHandler);
+    }
+
+    // guarded by this
+    private void addToWriteBatch(ByteBuffer buffer) {
+        if (writeBatchSize == writeBatch.length) {
+            writeBatch = Arrays.copyOf(writeBatch, writeBatch.length * 2);
+        }
+        writeBatch[writeBatchSize++] = buffer;
+    }
+
+    private boolean shouldWaitForMore(int ready) {
+        return writeProperties.flushPolicy() == ApplicationConfig.FlushPolicy.BATCHED
+            && ready < batchSlots.length
+            && pending.size() > ready; // more responses of this connection are still being produced
+    }
+
+    private void flush() {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+        writeNext(true);
+    }
+
+    void onWritten() {
+        int firstUnwritten = 0;
+        while (firstUnwritten < writeBatchSize && !writeBatch[firstUnwritten].hasRemaining()) firstUnwritten++;
+        if (firstUnwritten < writeBatchSize && !isClosed()) {
+            // partial write, keep going until the whole batch is out
+            channel.write(writeBatch, firstUnwritten, writeBatchSize - firstUnwritten, null, writeHandler);
+            return;
+        }
+
+        boolean resume = false;
+        synchronized (this) {
+            writing = false;
+            int written = batchSlotCount;
+            int pushed = batchPushCount;
+            releaseWriteBatch();
+            if (closed) return;
+
+            for (int i = 0; i < pushed; i++) {
+                queuedPushBytes -= pushQueue.poll().limit();
+            }
+            for (int i = 0; i < written; i++) {
+                var slot = pending.poll();
+                queuedResponseBytes -= slot.size;
+                boolean stayAlive = slot.response.stayAlive();
+                recycle(slot);
+                if (!stayAlive) {
+                    // anything pipelined after a non keep-alive request is dropped
+                    close();
+                    return;
+                }
+            }
+            if (readPaused && isBelowLowWatermark()) {
+                readPaused = false;
+                readerActive = true;
+                resume = true;
+            }
+        }
+        writeNext(false);
+
+        if (resume) {
+            // parse frames that were already buffered before issuing another read
+            readBuffer.flip();
+            processBuffered(accumulator);
+        }
+    }
+
+    void onWriteFailed(Throwable exc) {
+        synchronized (this) {
+            writing = false;
+            // released with the batch, so close() must not find them in pending and release them again
+            for (int i = 0; i < batchSlotCount; i++) pending.poll();
+            releaseWriteBatch();
+        }
+        log.debug("Write failed: {}", exc.getMessage());
+        close();
+    }
+
+    // guarded by this
+    private void releaseWriteBatch() {
+        for (int i = 0; i < batchSlotCount; i++) {
+            release(batchSlots[i]);
+            batchSlots[i] = null;
+        }
+        Arrays.fill(writeBatch, 0, writeBatchSize, null);
+        batchSlotCount = 0;
+        batchPushCount = 0;
+        writeBatchSize = 0;
+    }
+
+    /**
+     * Queues a push frame (a view of bytes shared with the topic's other subscribers), false if the connection
+     * already has maxMessages or maxBytes of push frames waiting. A closed connection takes and discards it.
+     */
+    boolean push(ByteBuffer frame, int maxMessages, long maxBytes) {
+        synchronized (this) {
+            if (closed) return true;
+            if (!pushQueue.isEmpty()
+                && (pushQueue.size() >= maxMessages || queuedPushBytes + frame.remaining() > maxBytes)) {
+                return false;
+            }
+            pushQueue.add(frame);
+            queuedPushBytes += frame.remaining();
+        }
+        writeNext(false);
+        return true;
+    }
+
+    /**
+     * Subscribes the connection to a topic, false if it is closed or already has maxTopics other topics.
+     */
+    synchronized boolean subscribe(PubSub pubSub, String topic, int maxTopics) {
+        if (closed) return false;
+        if (topics == null) topics = new HashSet<>();
+        if (topics.contains(topic)) return true;
+        if (topics.size() >= maxTopics) return false;
+        topics.add(topic);
+        this.pubSub = pubSub;
+        // registered under the lock, so close() either sees the topic or the subscription never happens
+        pubSub.register(topic, this);
+        return true;
+    }
+
+    synchronized void unsubscribe(String topic) {
+        if (topics != null && topics.remove(topic)) pubSub.unregister(topic, this);
+    }
+
+    private boolean isOverLimit() {
+        var limits = runtimeLimits.connectionProperties();
+        return pending.size() >= limits.maxInFlightRequests() || queuedResponseBytes >= limits.highWatermarkBytes();
+    }
+
+    private boolean isBelowLowWatermark() {
+        var limits = runtimeLimits.connectionProperties();
+        return pending.size() < limits.maxInFlightRequests() && queuedResponseBytes <= limits.lowWatermarkBytes();
+    }
+
+    // guarded by this
+    private PendingResponse acquireSlot() {
+        var slot = freeSlots.poll();
+        return slot != null ? slot : new PendingResponse();
+    }
+
+    // guarded by this, only for slots whose response was written and released
+    private void recycle(PendingResponse slot) {
+        slot.response = null;
+        slot.buffer = null;
+        slot.bodyBuffers = null;
+        slot.size = 0;
+        slot.chargedBytes = 0;
+        slot.requestBytes = 0;
+        slot.startNanos = 0;
+        if (freeSlots.size() < runtimeLimits.connectionProperties().maxInFlightRequests()) freeSlots.add(slot);
+    }
+
+    private void release(PendingResponse slot) {
+        returnBufferToPool(slot.buffer);
+        slot.response.release();
+        memoryBudget.release(slot.chargedBytes);
+    }
+
+    private static void returnBufferToPool(ByteBuffer writeBuffer) {
+        final ByteBufferPool bufferPool = ByteBufferPool.getInstance();
+        if (writeBuffer.capacity() == bufferPool.getBufferSize()) {
+            bufferPool.returnBuffer(writeBuffer);
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Called by the reader once it will not touch the read buffer again, whoever of reader and close() comes
+     * last hands the buffer back to the pool.
+     */
+    private void stopReading() {
+        synchronized (this) {
+            readerActive = false;
+            if (!closed) return;
+        }
+        ByteBufferPool.getInstance().returnBuffer(readBuffer);
+    }
+
+    public void close() {
+        boolean releaseReadBuffer;
+        Set<String> subscribed;
+        long answered;
+        RequestAccumulator parked;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            // a reader parked on the memory budget never comes back for its frame, release what it reserved
+            parked = parkedAccumulator;
+            parkedAccumulator = null;
+            int inWrite = writing ? batchSlotCount : 0;
+            for (var slot : pending) {
+                // buffers of the batch being written go back once that write completes
+                if (inWrite-- > 0) continue;
+                if (slot.buffer != null) release(slot);
+            }
+            pending.clear();
+            queuedResponseBytes = 0;
+            pushQueue.clear();
+            queuedPushBytes = 0;
+            subscribed = topics;
+            topics = null;
+            answered = responses;
+            releaseReadBuffer = !readerActive;
+        }
+        if (parked != null) discardFrame(parked);
+        if (accessLog != null) accessLog.connectionClosed(connectionId, answered);
+        if (subscribed != null) {
+            for (var topic : subscribed) pubSub.unregister(topic, this);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (releaseReadBuffer) {
+            ByteBufferPool.getInstance().returnBuffer(readBuffer);
+        }
+    }
+
+    /**
+     * Response slot reserved when a request is dispatched, so responses are written in request order even when
+     * handlers finish out of order. It is also the request handler's callback, slots are reused once written.
+     */
+    final class PendingResponse implements BiConsumer<ServerResponse, Throwable> {
+        private ServerResponse response;
+        private ByteBuffer buffer; // status and length prefix, plus the body unless it is zero-copy
+        private ByteBuffer[] bodyBuffers; // zero-copy body segments written as they are
+        private int size;
+        private long chargedBytes; // reserved in the memory budget for the request and the response
+        private long requestBytes; // for the access log
+        private long startNanos;
+
+        Connection connection() {
+            return Connection.this;
+        }
+
+        @Override
+        public void accept(ServerResponse response, Throwable ex) {
+            if (ex != null) {
+                // only custom request handlers fail the future, the stream position is still fine but end it anyway
+                log.error("Request handler failed: {}", ex.getMessage(), ex);
+                response = new ServerResponse(null, new InternalServerResponse(500, HANDLER_FAILED), false);
+            }
+            onResponse(this, response);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package server;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transport under a {@link Connection}: one read and one gathering write pending at a time, completing through
+ * {@link CompletionHandler}s like the NIO.2 channels. Implemented over an AsynchronousSocketChannel for TCP, a
+ * selector for Unix domain sockets and in memory for the loopback transport.
+ */
+interface ConnectionChannel extends Closeable {
+
+    /**
+     * Reads into dst, completes with -1 at the end of the stream and fails with
+     * {@link InterruptedByTimeoutException} if nothing arrived within a positive timeout.
+     */
+    <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler);
+
+    /**
+     * Writes from the buffers and completes with the number of bytes written, which may be fewer than remain; the
+     * caller writes the rest with the next call.
+     */
+    <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Long, ? super A> handler);
+
+    /**
+     * @return the peer's address, or null if it is not known
+     */
+    SocketAddress remoteAddress();
+}
@@ -0,0 +1,113 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.InternalServerResponse;
+import model.ServerRequest;
+import server.interfaces.IRequestRouteHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves files below a root directory from a {@link MappedFileCache}. The mapped slices are handed to the
+ * connection as the response body and written straight to the socket, nothing is copied onto the heap.
+ * <p>
+ * Request headers:
+ * File: path of the file relative to the root (required)
+ * Range-Offset: first byte to return (optional, default 0)
+ * Range-Length: number of bytes to return (optional, default up to the end of the file)
+ * <p>
+ * Responds 200 with the whole file, 206 with a range, 400 for a missing or invalid File header, 404 if there is no
+ * such file and 416 for a range outside of the file or larger than one response frame can carry.
+ */
+@Slf4j
+public class FileRouteHandler implements IRequestRouteHandler {
+    public static final String FILE_HEADER = "File";
+    public static final String RANGE_OFFSET_HEADER = "Range-Offset";
+    public static final String RANGE_LENGTH_HEADER = "Range-Length";
+
+    private final Path root;
+    private final MappedFileCache cache;
+
+    public FileRouteHandler(Path root, MappedFileCache cache) {
+        this.root = root.toAbsolutePath().normalize();
+        this.cache = cache;
+    }
+
+    @Override
+    public CompletableFuture<InternalServerResponse> handleRequest(ServerRequest serverRequest) {
+        return CompletableFuture.completedFuture(serve(serverRequest));
+    }
+
+    private InternalServerResponse serve(ServerRequest serverRequest) {
+        var headers = serverRequest.headers();
+        var file = resolve(headers.get(FILE_HEADER));
+        if (file == null) return error(400, "Missing or invalid " + FILE_HEADER + " header");
+        file = realFile(file);
+        if (file == null) return error(404, "File not found");
+
+        long offset;
+        Long length;
+        try {
+            offset = parseLong(headers.get(RANGE_OFFSET_HEADER), 0L);
+            length = parseLong(headers.get(RANGE_LENGTH_HEADER), null);
+        } catch (NumberFormatException e) {
+            return error(400, "Invalid range header: " + e.getMessage());
+        }
+
+        MappedFileCache.MappedFile mapped;
+        try {
+            mapped = cache.acquire(file);
+        } catch (NoSuchFileException e) {
+            return error(404, "File not found");
+        } catch (IOException e) {
+            log.error("Failed to map {}: {}", file, e.getMessage(), e);
+            return error(500, "Failed to read file");
+        }
+
+        long end = length == null ? mapped.getSize() : offset + length;
+        if (offset < 0 || end < offset || end > mapped.getSize() || end - offset > Integer.MAX_VALUE - 8) {
+            mapped.release();
+            return error(416, "Range not satisfiable, file has " + mapped.getSize() + " bytes");
+        }
+        int status = offset == 0 && end == mapped.getSize() ? 200 : 206;
+        return new InternalServerResponse(status, mapped.slice(offset, end - offset), mapped::release);
+    }
+
+    private Path resolve(String name) {
+        if (name == null || name.isEmpty()) return null;
+        try {
+            var file = root.resolve(name).normalize();
+            // reject anything escaping the root, e.g. "../secret" or an absolute path
+            return file.startsWith(root) && !file.equals(root) ? file : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The file with every symbolic link resolved, null unless it is a regular file that is still below the root,
+     * so a link inside the root can not serve files outside of it.
+     */
+    private Path realFile(Path file) {
+        try {
+            var real = file.toRealPath();
+            return real.startsWith(root.toRealPath()) && Files.isRegularFile(real) ? real : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Long parseLong(String value, Long defaultValue) {
+        return value == null ? defaultValue : Long.valueOf(value.trim());
+    }
+
+    private static InternalServerResponse error(int status, String message) {
+        return new InternalServerResponse(status, message.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,158 @@
+package server;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ReadPendingException;
+import java.nio.channels.WritePendingException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server end of an in-memory connection, a {@link ConnectionChannel} through which a {@link Connection} serves
+ * frames handed over by {@link LoopbackTransport} without any socket. Frames offered by the client are queued
+ * and copied into the connection's read buffer, written bytes are handed to the client's receiver right away.
+ * Completion handlers run on the transport's executor, never inside the read() or write() call that started the
+ * operation. Read timeouts are ignored, an idle loopback connection stays open until either end closes it.
+ */
+final class LoopbackChannel implements ConnectionChannel {
+    private final Executor executor;
+    private final SocketAddress address;
+    private final LoopbackTransport.Receiver peer;
+    private final AtomicBoolean writePending = new AtomicBoolean();
+    private final Runnable deliverTask = this::deliver;
+
+    // guarded by this
+    private final ArrayDeque<ByteBuffer> inbound = new ArrayDeque<>();
+    private boolean inputShutdown = false; // the client closed its end, reads see EOF once inbound is drained
+    private boolean closed = false;
+    private ByteBuffer readBuffer;
+    private Object readAttachment;
+    private CompletionHandler<Integer, Object> readHandler;
+
+    LoopbackChannel(Executor executor, SocketAddress address, LoopbackTransport.Receiver peer) {
+        this.executor = executor;
+        this.address = address;
+        this.peer = peer;
+    }
+
+    /**
+     * Queues bytes sent by the client, ownership of the buffer passes to the channel.
+     */
+    void offer(ByteBuffer bytes) throws ClosedChannelException {
+        synchronized (this) {
+            if (closed || inputShutdown) throw new ClosedChannelException();
+            inbound.add(bytes);
+            if (readHandler == null) return;
+        }
+        executor.execute(deliverTask);
+    }
+
+    /**
+     * The client closed its end: the connection reads what was queued, then EOF.
+     */
+    void shutdownByPeer() {
+        synchronized (this) {
+            inputShutdown = true;
+            if (readHandler == null) return;
+        }
+        executor.execute(deliverTask);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        synchronized (this) {
+            if (readHandler != null) throw new ReadPendingException();
+            readBuffer = dst;
+            readAttachment = attachment;
+            readHandler = (CompletionHandler<Integer, Object>) handler;
+            if (inbound.isEmpty() && !inputShutdown && !closed) return;
+        }
+        executor.execute(deliverTask);
+    }
+
+    /**
+     * Completes the pending read with as many queued bytes as fit, with EOF once the client closed its end.
+     */
+    private void deliver() {
+        CompletionHandler<Integer, Object> handler;
+        Object attachment;
+        int result;
+        synchronized (this) {
+            handler = readHandler;
+            if (handler == null) return;
+            attachment = readAttachment;
+            if (closed) {
+                result = Integer.MIN_VALUE;
+            } else if (inbound.isEmpty()) {
+                if (!inputShutdown) return; // delivered by an earlier task already
+                result = -1;
+            } else {
+                result = 0;
+                while (readBuffer.hasRemaining() && !inbound.isEmpty()) {
+                    var src = inbound.peek();
+                    int n = Math.min(src.remaining(), readBuffer.remaining());
+                    readBuffer.put(readBuffer.position(), src, src.position(), n);
+                    readBuffer.position(readBuffer.position() + n);
+                    src.position(src.position() + n);
+                    result += n;
+                    if (!src.hasRemaining()) inbound.poll();
+                }
+            }
+            readHandler = null;
+            readAttachment = null;
+            readBuffer = null;
+        }
+        if (result == Integer.MIN_VALUE) {
+            handler.failed(new AsynchronousCloseException(), attachment);
+        } else {
+            handler.completed(result, attachment);
+        }
+    }
+
+    @Override
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Long, ? super A> handler) {
+        if (!writePending.compareAndSet(false, true)) throw new WritePendingException();
+        boolean open;
+        synchronized (this) {
+            open = !closed;
+        }
+        long written = 0;
+        if (open) {
+            for (int i = offset; i < offset + length; i++) {
+                written += srcs[i].remaining();
+                peer.onBytes(srcs[i]);
+            }
+        }
+        long result = written;
+        executor.execute(() -> {
+            writePending.set(false);
+            if (open) {
+                handler.completed(result, attachment);
+            } else {
+                handler.failed(new AsynchronousCloseException(), attachment);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            inbound.clear();
+        }
+        peer.onClose();
+        executor.execute(deliverTask);
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        return address;
+    }
+}
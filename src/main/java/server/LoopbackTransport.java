@@ -0,0 +1,128 @@
+package server;
+
+import model.ApplicationConfig;
+import server.interfaces.IRequestHandler;
+
+import java.io.Closeable;
+import java.io.Serial;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process transport: frames go from an in-memory client straight into a regular {@link Connection}, with the
+ * same accumulator, parser, memory budget, {@link ByteBufferPool} buffers and response ordering as a socket, so
+ * route handlers and the dispatch layer can be measured and tested without kernel or network noise.
+ * client.LoopbackClient wraps it in the socket client's API. {@link ByteBufferPool} has to be initialised first.
+ * <p>
+ * Closing the transport does not close the request handler.
+ */
+public class LoopbackTransport implements Closeable {
+    private final ApplicationConfig config;
+    private final IRequestHandler requestHandler;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final MemoryBudget memoryBudget;
+    private final RuntimeLimits runtimeLimits;
+    private final AtomicLong connections = new AtomicLong();
+
+    public LoopbackTransport(ApplicationConfig config, IRequestHandler requestHandler) {
+        this.config = config;
+        this.requestHandler = requestHandler;
+        this.executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("loopback").daemon().factory());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("loopback-scheduler").daemon().factory());
+        this.memoryBudget = new MemoryBudget(config.memoryProperties());
+        this.runtimeLimits = new RuntimeLimits(config, memoryBudget, null);
+    }
+
+    /**
+     * Opens a connection whose response bytes are passed to the receiver, in order and on the thread that writes
+     * them.
+     */
+    public Pipe connect(Receiver receiver) {
+        var channel = new LoopbackChannel(executor, new Address(connections.incrementAndGet()), receiver);
+        new Connection(channel, requestHandler, config, scheduler, memoryBudget, runtimeLimits, null, null).start();
+        return new Pipe(channel);
+    }
+
+    public MemoryBudgetMXBean getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Client end of a loopback connection.
+     */
+    public interface Receiver {
+        /**
+         * Response bytes written by the server, consume them before returning, the buffer is reused afterwards.
+         */
+        void onBytes(ByteBuffer bytes);
+
+        /**
+         * The server closed the connection.
+         */
+        void onClose();
+    }
+
+    /**
+     * Remote address of a loopback connection, numbered in the order connections were opened.
+     */
+    public static final class Address extends SocketAddress {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final long connection;
+
+        private Address(long connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Address other && other.connection == connection;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(connection);
+        }
+
+        @Override
+        public String toString() {
+            return "loopback:" + connection;
+        }
+    }
+
+    public static final class Pipe implements Closeable {
+        private final LoopbackChannel channel;
+
+        private Pipe(LoopbackChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Sends request bytes, e.g. one or more complete frames, the buffer must not be touched afterwards.
+         */
+        public void send(ByteBuffer bytes) throws ClosedChannelException {
+            channel.offer(bytes);
+        }
+
+        /**
+         * Ends the connection once the server read everything sent so far.
+         */
+        @Override
+        public void close() {
+            channel.shutdownByPeer();
+        }
+    }
+}
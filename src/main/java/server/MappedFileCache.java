@@ -0,0 +1,214 @@
+package server;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded LRU cache of read-only memory-mapped files. Files are mapped in regions of at most regionSizeBytes so
+ * files above 2 GB can be served too. Every {@link #acquire} pins the entry until the matching
+ * {@link MappedFile#release()}, pinned entries are never evicted, so a slice being written to a socket stays valid.
+ * When an entry is evicted or invalidated the cache drops its references and the mapping is unmapped by the GC once
+ * the last lease is released.
+ * <p>
+ * Size and modification time of a cached file are re-checked at most every validationIntervalMs, a changed file is
+ * mapped again. Files that are truncated in place while mapped can still fault, replace files atomically (write and
+ * rename) instead.
+ */
+@Slf4j
+public class MappedFileCache {
+    private final long maxMappedBytes;
+    private final int maxEntries;
+    private final int regionSizeBytes;
+    private final long validationIntervalNanos;
+
+    // guarded by this
+    private final LinkedHashMap<Path, MappedFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes = 0;
+
+    public MappedFileCache(long maxMappedBytes, int maxEntries, int regionSizeBytes, long validationIntervalMs) {
+        if (regionSizeBytes <= 0) throw new IllegalArgumentException("regionSizeBytes must be positive");
+        this.maxMappedBytes = maxMappedBytes;
+        this.maxEntries = maxEntries;
+        this.regionSizeBytes = regionSizeBytes;
+        this.validationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(validationIntervalMs);
+    }
+
+    /**
+     * Returns the mapped file pinned for the caller, who must call {@link MappedFile#release()} exactly once.
+     *
+     * @throws java.nio.file.NoSuchFileException if the file does not exist
+     */
+    public MappedFile acquire(Path path) throws IOException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            var entry = entries.get(path);
+            if (entry != null && now - entry.validatedAt < validationIntervalNanos) {
+                entry.references++;
+                return entry;
+            }
+        }
+
+        // stat and map outside the lock, concurrent misses for the same file may both map it
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        synchronized (this) {
+            var entry = entries.get(path);
+            if (entry != null) {
+                if (entry.isSameVersion(size, lastModified)) {
+                    entry.validatedAt = now;
+                    entry.references++;
+                    return entry;
+                }
+                log.debug("File changed on disk, invalidating {}", path);
+                remove(entry);
+            }
+        }
+
+        var mapped = map(path, size, lastModified, now);
+        synchronized (this) {
+            var entry = entries.get(path);
+            if (entry != null && entry.isSameVersion(size, lastModified)) {
+                entry.references++;
+                return entry;
+            }
+            if (entry != null) remove(entry);
+            mapped.references = 1;
+            if (makeRoom(size)) {
+                mapped.cached = true;
+                entries.put(path, mapped);
+                mappedBytes += size;
+            }
+            return mapped;
+        }
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Drops every entry, mappings still leased stay valid until they are released.
+     */
+    public synchronized void clear() {
+        for (var entry : entries.values()) {
+            entry.cached = false;
+        }
+        entries.clear();
+        mappedBytes = 0;
+    }
+
+    private MappedFile map(Path path, long size, long lastModified, long now) throws IOException {
+        int regionCount = (int) ((size + regionSizeBytes - 1) / regionSizeBytes);
+        var regions = new MappedByteBuffer[regionCount];
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < regionCount; i++) {
+                long position = (long) i * regionSizeBytes;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSizeBytes, size - position));
+            }
+        }
+        return new MappedFile(path, size, lastModified, regions, now);
+    }
+
+    /**
+     * Evicts least recently used entries that are not leased until the file fits, false if it can not be cached.
+     */
+    // guarded by this
+    private boolean makeRoom(long size) {
+        if (size > maxMappedBytes || maxEntries <= 0) return false;
+        Iterator<MappedFile> it = entries.values().iterator();
+        while ((mappedBytes + size > maxMappedBytes || entries.size() >= maxEntries) && it.hasNext()) {
+            var entry = it.next();
+            if (entry.references > 0) continue;
+            it.remove();
+            entry.cached = false;
+            mappedBytes -= entry.size;
+        }
+        return mappedBytes + size <= maxMappedBytes && entries.size() < maxEntries;
+    }
+
+    // guarded by this
+    private void remove(MappedFile entry) {
+        entries.remove(entry.path);
+        entry.cached = false;
+        mappedBytes -= entry.size;
+    }
+
+    private synchronized void release(MappedFile entry) {
+        if (entry.references <= 0) throw new IllegalStateException("MappedFile released more often than acquired: " + entry.path);
+        entry.references--;
+    }
+
+    /**
+     * One version of a mapped file, split into regions of regionSizeBytes.
+     */
+    public final class MappedFile {
+        private final Path path;
+        @Getter
+        private final long size;
+        private final long lastModified;
+        private final MappedByteBuffer[] regions;
+
+        // guarded by the cache
+        private long validatedAt;
+        private int references = 0;
+        private boolean cached = false;
+
+        private MappedFile(Path path, long size, long lastModified, MappedByteBuffer[] regions, long validatedAt) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.regions = regions;
+            this.validatedAt = validatedAt;
+        }
+
+        private boolean isSameVersion(long size, long lastModified) {
+            return this.size == size && this.lastModified == lastModified;
+        }
+
+        /**
+         * Independent views of [offset, offset + length), one per region touched, so concurrent writers of the
+         * same file do not share buffer positions and nothing is copied.
+         */
+        public ByteBuffer[] slice(long offset, long length) {
+            if (offset < 0 || length < 0 || offset + length > size) {
+                throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " outside of " + path + " (" + size + " bytes)");
+            }
+            if (length == 0) return new ByteBuffer[0];
+
+            int first = (int) (offset / regionSizeBytes);
+            int last = (int) ((offset + length - 1) / regionSizeBytes);
+            var slices = new ByteBuffer[last - first + 1];
+            long remaining = length;
+            int start = (int) (offset % regionSizeBytes);
+            for (int i = first; i <= last; i++) {
+                var region = regions[i];
+                int sliceLength = (int) Math.min(remaining, region.capacity() - start);
+                slices[i - first] = region.slice(start, sliceLength);
+                remaining -= sliceLength;
+                start = 0;
+            }
+            return slices;
+        }
+
+        public void release() {
+            MappedFileCache.this.release(this);
+        }
+    }
+}
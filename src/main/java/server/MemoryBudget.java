@@ -0,0 +1,110 @@
+package server;
+
+import lombok.Getter;
+import model.ApplicationConfig;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide budget for heap held by in-flight requests and responses. A connection reserves a frame's payload
+ * before allocating it and pauses reading while the budget is exhausted, frames above maxFrameBytes are rejected.
+ * Response bytes are charged unconditionally since they can not be refused anymore, they only delay new frames.
+ * Everything is released once the response was written or dropped. Both limits can be changed at runtime.
+ */
+public class MemoryBudget implements MemoryBudgetMXBean {
+    @Getter
+    private volatile long limitBytes;
+    @Getter
+    private volatile long maxFrameBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong rejectedFrames = new AtomicLong();
+    private final AtomicLong pausedReads = new AtomicLong();
+    private final ConcurrentLinkedQueue<Runnable> waiters = new ConcurrentLinkedQueue<>();
+
+    public MemoryBudget(ApplicationConfig.MemoryProperties properties) {
+        this.limitBytes = properties.maxInFlightBytes();
+        this.maxFrameBytes = properties.maxFrameBytes();
+    }
+
+    /**
+     * A higher limit wakes the connections waiting for memory.
+     */
+    public void setLimitBytes(long limitBytes) {
+        if (limitBytes <= 0) throw new IllegalArgumentException("limitBytes must be positive");
+        this.limitBytes = limitBytes;
+        wakeWaiters();
+    }
+
+    public void setMaxFrameBytes(long maxFrameBytes) {
+        if (maxFrameBytes <= 0) throw new IllegalArgumentException("maxFrameBytes must be positive");
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    public boolean isFrameTooLarge(long frameBytes) {
+        return frameBytes > maxFrameBytes;
+    }
+
+    /**
+     * Reserves bytes if they fit. A frame is always admitted while nothing else is reserved, so a single frame
+     * larger than the global limit can not wait forever.
+     */
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long used = usedBytes.get();
+            if (!fits(used, bytes)) return false;
+            if (usedBytes.compareAndSet(used, used + bytes)) return true;
+        }
+    }
+
+    private boolean fits(long used, long bytes) {
+        return used == 0 || used + bytes <= limitBytes;
+    }
+
+    public void reserve(long bytes) {
+        usedBytes.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        if (bytes == 0) return;
+        usedBytes.addAndGet(-bytes);
+        wakeWaiters();
+    }
+
+    /**
+     * Runs the callback once memory was released, the callback has to {@link #tryReserve} again and re-register if
+     * it lost the race. It runs on the releasing thread, so it should only hand work off.
+     */
+    public void onRelease(long bytes, Runnable callback) {
+        pausedReads.incrementAndGet();
+        waiters.add(callback);
+        // release may have happened between the failed reservation and the registration
+        if (fits(usedBytes.get(), bytes)) wakeWaiters();
+    }
+
+    public void frameRejected() {
+        rejectedFrames.incrementAndGet();
+    }
+
+    private void wakeWaiters() {
+        Runnable waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.run();
+        }
+    }
+
+    @Override
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    @Override
+    public long getRejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    @Override
+    public long getPausedReads() {
+        return pausedReads.get();
+    }
+}
@@ -0,0 +1,16 @@
+package server;
+
+/**
+ * JMX view of a server's {@link MemoryBudget}.
+ */
+public interface MemoryBudgetMXBean {
+    long getUsedBytes();
+
+    long getLimitBytes();
+
+    long getMaxFrameBytes();
+
+    long getRejectedFrames();
+
+    long getPausedReads();
+}
@@ -0,0 +1,208 @@
+package server;
+
+import client.AsyncClient;
+import client.ClientConfig;
+import client.RequestEncoder;
+import client.Response;
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.Headers;
+import model.InternalServerResponse;
+import model.ServerRequest;
+import server.interfaces.IRequestRouteHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reverse proxy route: forwards requests to one of a pool of upstream tiny-tcp servers and answers with the
+ * upstream's response. Each upstream is an {@link AsyncClient} with pipelined keep-alive connections.
+ * <p>
+ * The upstream is picked by power of two choices: two random upstreams are compared and the one with fewer
+ * requests in flight through this route wins, which avoids both the herding of always picking the least loaded
+ * one and the blindness of round robin. Upstreams failing consecutiveFailures times in a row are ejected for a
+ * while (longer each time in a row), but never more than maxEjectionPercent of them; when every upstream is
+ * ejected the proxy uses them anyway.
+ * <p>
+ * Keep-alive requests are forwarded with the header block they arrived with, others are encoded again with
+ * Keep-Alive so the upstream connections stay open. Transport failures are answered with 502, timeouts with
+ * 504 and requests while every upstream connection is at its pipeline depth with 503.
+ */
+@Slf4j
+public class ProxyRouteHandler implements IRequestRouteHandler, AutoCloseable {
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+    private static final InternalServerResponse BAD_GATEWAY = error(502, "Upstream failed");
+    private static final InternalServerResponse UNAVAILABLE = error(503, "Upstreams busy");
+    private static final InternalServerResponse GATEWAY_TIMEOUT = error(504, "Upstream timed out");
+
+    private final ApplicationConfig.ProxyProperties properties;
+    private final Upstream[] upstreams;
+    private final int maxEjected;
+    private final AtomicLong forwardedRequests = new AtomicLong();
+    private final AtomicLong ejections = new AtomicLong();
+
+    public ProxyRouteHandler(List<String> upstreams, ApplicationConfig.ProxyProperties properties) throws IOException {
+        if (upstreams.isEmpty()) throw new IllegalArgumentException("At least one upstream is required");
+        this.properties = properties;
+        var clientConfig = ClientConfig.builder()
+            .connectionsPerEndpoint(properties.connectionsPerUpstream())
+            .maxPipelineDepth(properties.maxPipelineDepth())
+            .requestTimeoutMs(properties.requestTimeoutMs())
+            .build();
+        this.upstreams = new Upstream[upstreams.size()];
+        try {
+            for (int i = 0; i < this.upstreams.length; i++) {
+                this.upstreams[i] = new Upstream(upstreams.get(i), new AsyncClient(parseAddress(upstreams.get(i)), clientConfig));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        this.maxEjected = this.upstreams.length * Math.max(0, Math.min(100, properties.maxEjectionPercent())) / 100;
+    }
+
+    private static SocketAddress parseAddress(String upstream) {
+        int colon = upstream.lastIndexOf(':');
+        if (colon < 0) return UnixDomainSocketAddress.of(upstream);
+        return new InetSocketAddress(upstream.substring(0, colon), Integer.parseInt(upstream.substring(colon + 1)));
+    }
+
+    @Override
+    public boolean forwardsHeaderBlock() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<InternalServerResponse> handleRequest(ServerRequest serverRequest) {
+        ByteBuffer headerBlock;
+        if (serverRequest.headerBlock() != null && serverRequest.isKeepAlive()) {
+            headerBlock = ByteBuffer.wrap(serverRequest.headerBlock());
+        } else {
+            var headers = new LinkedHashMap<String, String>(serverRequest.headers());
+            headers.remove(Headers.KEEP_ALIVE);
+            headerBlock = RequestEncoder.encodeHeaderBlockKeepAlive(serverRequest.path(), headers);
+        }
+
+        var upstream = choose();
+        upstream.outstanding.incrementAndGet();
+        forwardedRequests.incrementAndGet();
+        return upstream.client.forward(headerBlock, serverRequest.body())
+            .handle((response, error) -> upstream.complete(response, error));
+    }
+
+    /**
+     * Power of two choices among the upstreams that are not ejected.
+     */
+    private Upstream choose() {
+        if (upstreams.length == 1) return upstreams[0];
+        long now = System.nanoTime();
+        var random = ThreadLocalRandom.current();
+        int i = random.nextInt(upstreams.length);
+        int j = random.nextInt(upstreams.length - 1);
+        if (j >= i) j++;
+        var a = upstreams[i];
+        var b = upstreams[j];
+        boolean aEjected = a.isEjected(now);
+        boolean bEjected = b.isEjected(now);
+        if (aEjected && bEjected) {
+            // look for any healthy one before falling back to ejected ones
+            for (int k = 0; k < upstreams.length; k++) {
+                var candidate = upstreams[(i + k) % upstreams.length];
+                if (!candidate.isEjected(now)) return candidate;
+            }
+        } else if (aEjected || bEjected) {
+            return aEjected ? b : a;
+        }
+        return a.outstanding.get() <= b.outstanding.get() ? a : b;
+    }
+
+    private synchronized void eject(Upstream upstream, long now) {
+        if (upstream.isEjected(now)) return;
+        int ejected = 0;
+        for (var candidate : upstreams) {
+            if (candidate.isEjected(now)) ejected++;
+        }
+        if (ejected >= maxEjected) return;
+        upstream.ejectionsInARow = Math.min(upstream.ejectionsInARow + 1, MAX_EJECTION_MULTIPLIER);
+        long durationMs = properties.baseEjectionMs() * upstream.ejectionsInARow;
+        upstream.ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        upstream.consecutiveFailures.set(0);
+        ejections.incrementAndGet();
+        log.warn("Ejected upstream {} for {} ms after {} consecutive failures", upstream.name, durationMs, properties.consecutiveFailures());
+    }
+
+    public long getForwardedRequests() {
+        return forwardedRequests.get();
+    }
+
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    @Override
+    public void close() {
+        for (var upstream : upstreams) {
+            if (upstream != null) upstream.client.close();
+        }
+    }
+
+    private static InternalServerResponse error(int status, String message) {
+        return new InternalServerResponse(status, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private final class Upstream {
+        private final String name;
+        private final AsyncClient client;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntil = System.nanoTime();
+        private volatile int ejectionsInARow = 0; // written under the handler's lock
+
+        private Upstream(String name, AsyncClient client) {
+            this.name = name;
+            this.client = client;
+        }
+
+        boolean isEjected(long now) {
+            return now - ejectedUntil < 0;
+        }
+
+        InternalServerResponse complete(Response response, Throwable error) {
+            outstanding.decrementAndGet();
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            // our own connections being full says nothing about the upstream
+            if (cause instanceof RejectedExecutionException) return UNAVAILABLE;
+
+            if (cause == null && response.status() < 500) {
+                if (consecutiveFailures.get() != 0) consecutiveFailures.set(0);
+                if (ejectionsInARow != 0 && !isEjected(System.nanoTime())) {
+                    synchronized (ProxyRouteHandler.this) {
+                        ejectionsInARow = 0;
+                    }
+                }
+                return new InternalServerResponse(response.status(), response.body());
+            }
+            if (consecutiveFailures.incrementAndGet() >= properties.consecutiveFailures()) {
+                eject(this, System.nanoTime());
+            }
+            if (cause == null) return new InternalServerResponse(response.status(), response.body());
+            if (cause instanceof TimeoutException) return GATEWAY_TIMEOUT;
+            log.warn("Forwarding to {} failed: {}", name, cause.toString());
+            return BAD_GATEWAY;
+        }
+    }
+}
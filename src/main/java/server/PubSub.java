@@ -0,0 +1,138 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.Headers;
+import model.InternalServerResponse;
+import model.ServerRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Topics that connections subscribe to, so clients get updates pushed instead of polling for them.
+ * <p>
+ * A keep-alive frame to {@link #SUBSCRIBE_PATH} (or {@link #UNSUBSCRIBE_PATH}) with a Topic header adds (or removes)
+ * the topic for its connection and is answered like any request. From then on every message published to the topic
+ * is written to the connection as a push frame [Status: 4 bytes = {@link #PUSH_STATUS}][Length: 4 bytes]
+ * [TopicLength: 2 bytes][Topic][Message], interleaved between responses but never inside one.
+ * <p>
+ * A message is encoded once and every subscriber queues a view of the same bytes. Queued push frames are coalesced
+ * into the connection's gathering writes, so a subscriber behind on a burst of messages gets them in a few writes.
+ * Queues are bounded, a subscriber that can not keep up loses messages or its connection depending on the
+ * {@link ApplicationConfig.SlowSubscriberPolicy}.
+ */
+@Slf4j
+public class PubSub {
+    public static final String SUBSCRIBE_PATH = "/_subscribe";
+    public static final String UNSUBSCRIBE_PATH = "/_unsubscribe";
+    public static final int PUSH_STATUS = 0;
+
+    private final ApplicationConfig.PubSubProperties properties;
+    private final ConcurrentHashMap<String, CopyOnWriteArraySet<Connection>> topics = new ConcurrentHashMap<>();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong disconnectedSubscribers = new AtomicLong();
+
+    public PubSub(ApplicationConfig.PubSubProperties properties) {
+        this.properties = properties;
+    }
+
+    public static boolean handles(String path) {
+        return SUBSCRIBE_PATH.equals(path) || UNSUBSCRIBE_PATH.equals(path);
+    }
+
+    /**
+     * Queues the message on every subscriber of the topic and returns how many of them took it.
+     */
+    public int publish(String topic, byte[] message) {
+        publishedMessages.incrementAndGet();
+        var subscribers = topics.get(topic);
+        if (subscribers == null) return 0;
+
+        var frame = encode(topic, message);
+        int delivered = 0;
+        for (var connection : subscribers) {
+            if (connection.push(frame.duplicate(), properties.maxQueuedMessages(), properties.maxQueuedBytes())) {
+                delivered++;
+            } else if (properties.slowSubscriberPolicy() == ApplicationConfig.SlowSubscriberPolicy.DISCONNECT) {
+                disconnectedSubscribers.incrementAndGet();
+                log.debug("Disconnecting slow subscriber of {}", topic);
+                connection.close();
+            } else {
+                droppedMessages.incrementAndGet();
+            }
+        }
+        return delivered;
+    }
+
+    public int getSubscriberCount(String topic) {
+        var subscribers = topics.get(topic);
+        return subscribers == null ? 0 : subscribers.size();
+    }
+
+    public long getPublishedMessages() {
+        return publishedMessages.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getDisconnectedSubscribers() {
+        return disconnectedSubscribers.get();
+    }
+
+    /**
+     * Answers a subscribe or unsubscribe frame, connection is null when the frame did not come straight from one
+     * (e.g. inside a batch).
+     */
+    InternalServerResponse handle(ServerRequest request, Connection connection) {
+        var topic = request.headers().get(Headers.TOPIC);
+        if (connection == null) return response(400, "Subscriptions can not be batched");
+        if (topic == null || topic.isEmpty()) return response(400, "Missing Topic header");
+
+        if (UNSUBSCRIBE_PATH.equals(request.path())) {
+            connection.unsubscribe(topic);
+            return response(200, "Unsubscribed");
+        }
+        if (!request.isKeepAlive()) return response(400, "Subscriptions need a keep-alive connection");
+        if (!connection.subscribe(this, topic, properties.maxTopicsPerConnection())) {
+            // a connection is never reopened, so a closed one here is why it refused
+            if (connection.isClosed()) return response(503, "Connection is closing");
+            return response(429, "Topic limit of " + properties.maxTopicsPerConnection() + " reached");
+        }
+        return response(200, "Subscribed");
+    }
+
+    void register(String topic, Connection connection) {
+        // inside compute, so an unregister emptying the set concurrently can not drop the new subscriber with it
+        topics.compute(topic, (key, subscribers) -> {
+            if (subscribers == null) subscribers = new CopyOnWriteArraySet<>();
+            subscribers.add(connection);
+            return subscribers;
+        });
+    }
+
+    void unregister(String topic, Connection connection) {
+        topics.computeIfPresent(topic, (key, subscribers) -> {
+            subscribers.remove(connection);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static ByteBuffer encode(String topic, byte[] message) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + topicBytes.length + message.length;
+        var frame = ByteBuffer.allocate(8 + length);
+        frame.putInt(PUSH_STATUS).putInt(length).putShort((short) topicBytes.length).put(topicBytes).put(message);
+        return frame.flip().asReadOnlyBuffer();
+    }
+
+    private static InternalServerResponse response(int status, String message) {
+        return new InternalServerResponse(status, message.getBytes(StandardCharsets.UTF_8));
+    }
+}
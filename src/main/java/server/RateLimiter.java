@@ -0,0 +1,114 @@
+package server;
+
+import model.ApplicationConfig;
+import model.Headers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client request rate limit: requestsPerSecond sustained with bursts of up to burst requests per key.
+ * Each key's bucket is a single theoretical arrival time updated with CAS (GCRA, equivalent to a token bucket),
+ * so admitting or rejecting a request takes no lock and allocates nothing for known keys.
+ * <p>
+ * Keys are spread over stripes holding at most maxKeys / stripes buckets each. A full bucket carries no state (a new
+ * one behaves the same), so when a stripe is full its refilled buckets are evicted. Keys that still do not fit share
+ * the stripe's overflow bucket, which keeps memory bounded at the price of limiting them together.
+ */
+public class RateLimiter {
+    private static final int STRIPES = 16;
+    private static final long EVICTION_INTERVAL_NANOS = 10_000_000; // full stripes are swept at most every 10ms
+
+    private final String keyHeader;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxKeysPerStripe;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    public RateLimiter(ApplicationConfig.RateLimitProperties properties) {
+        if (properties.requestsPerSecond() <= 0) throw new IllegalArgumentException("requestsPerSecond must be positive");
+        this.keyHeader = properties.keyHeader();
+        this.emissionIntervalNanos = Math.max(1, (long) (1_000_000_000L / properties.requestsPerSecond()));
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(1, properties.burst());
+        this.maxKeysPerStripe = Math.max(1, properties.maxKeys() / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Takes cost requests from the bucket of the request's key header, requests without it are not limited.
+     */
+    public boolean tryAcquire(Headers headers, int cost) {
+        var key = headers.get(keyHeader);
+        return key == null || tryAcquire(key, cost);
+    }
+
+    /**
+     * Takes cost requests from the key's bucket, false (and nothing taken) if that exceeds its rate.
+     */
+    public boolean tryAcquire(String key, int cost) {
+        long now = System.nanoTime();
+        var bucket = stripes[spread(key.hashCode()) & (STRIPES - 1)].bucket(key, now);
+        long increment = emissionIntervalNanos * cost;
+        while (true) {
+            long arrival = bucket.get();
+            long next = Math.max(arrival, now) + increment;
+            if (next - now > burstToleranceNanos) {
+                rejectedRequests.incrementAndGet();
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, next)) return true;
+        }
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    public int getTrackedKeys() {
+        int keys = 0;
+        for (var stripe : stripes) {
+            keys += stripe.buckets.size();
+        }
+        return keys;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class Stripe {
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE / 2);
+        private final AtomicBoolean evicting = new AtomicBoolean();
+        private volatile long lastEviction = System.nanoTime() - EVICTION_INTERVAL_NANOS;
+
+        AtomicLong bucket(String key, long now) {
+            var bucket = buckets.get(key);
+            if (bucket != null) return bucket;
+            if (buckets.size() >= maxKeysPerStripe) {
+                evictRefilled(now);
+                if (buckets.size() >= maxKeysPerStripe) return overflow;
+            }
+            // starts refilled, i.e. with a full burst available
+            return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        /**
+         * Drops buckets whose arrival time passed. One thread at a time and not more often than every 10ms, so a
+         * flood of new keys does not turn every request into a sweep, the others use the overflow meanwhile.
+         */
+        private void evictRefilled(long now) {
+            if (now - lastEviction < EVICTION_INTERVAL_NANOS || !evicting.compareAndSet(false, true)) return;
+            try {
+                lastEviction = now;
+                buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+}
@@ -1,89 +1,28 @@
 package server;
 
-import lombok.extern.slf4j.Slf4j;
 import model.RequestAccumulator;
-import server.interfaces.IRequestHandler;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
 
-@Slf4j
-public record ReadCompletionHandler(
-    AsynchronousSocketChannel channel,
-    IRequestHandler requestHandler,
-    ByteBuffer readBuffer
-) implements CompletionHandler<Integer, RequestAccumulator> {
+public record ReadCompletionHandler(Connection connection) implements CompletionHandler<Integer, RequestAccumulator> {
 
     @Override
     public void completed(Integer bytesRead, RequestAccumulator accumulator) {
         if (bytesRead == -1) {
-            ByteBufferPool.getInstance().returnBuffer(readBuffer);
-            closeSocket();
+            connection.onEndOfStream(accumulator);
             return;
         }
 
-        readBuffer.flip();
-        accumulator.append(readBuffer);
-        readBuffer.clear();
-
-        // parse lengths if not yet parsed
-        accumulator.parseHeaderLength();
-        accumulator.parseBodyLength();
-
-        if (accumulator.isComplete()) {
-            final ByteBufferPool bufferPool = ByteBufferPool.getInstance();
-
-            requestHandler
-                .handleRequest(accumulator)
-                .thenAccept(response -> {
-                    final int payloadSize = response.size();
-                    final int totalSize = 4 /* response status */ + 4 /* payload length */ + payloadSize;
-                    final int poolBufferSize = bufferPool.getBufferSize();
-
-                    ByteBuffer writeBuffer;
-                    // choose buffer: pool or temp
-                    if (totalSize <= poolBufferSize) {
-                        writeBuffer = bufferPool.get();
-                    } else {
-                        writeBuffer = ByteBuffer.allocate(totalSize);
-                    }
-
-                    writeBuffer.clear();
-                    writeBuffer.putInt(response.statusCode()); // status code
-                    writeBuffer.putInt(payloadSize); // length prefix
-                    writeBuffer.put(response.getBytes()); // body
-                    writeBuffer.flip();
-
-                    channel.write(
-                        writeBuffer,
-                        response,
-                        new WriteCompletionHandler(channel, requestHandler, writeBuffer)
-                    );
-                });
-
-            // Return the read buffer immediately after scheduling the write
-            bufferPool.returnBuffer(readBuffer);
-
-        } else {
-            // keep reading more bytes until complete
-            channel.read(readBuffer, accumulator, this);
-        }
+        connection.onRead(accumulator);
     }
 
     @Override
     public void failed(Throwable exc, RequestAccumulator accumulator) {
-        ByteBufferPool.getInstance().returnBuffer(readBuffer);
-        closeSocket();
-        log.error(exc.getMessage(), exc);
-    }
-
-    private void closeSocket() {
-        try {
-            channel.close();
-        } catch (IOException e) {
-            // ignore
+        if (exc instanceof InterruptedByTimeoutException) {
+            connection.onReadTimeout(accumulator);
+            return;
         }
+        connection.onReadFailed(exc, accumulator);
     }
 }
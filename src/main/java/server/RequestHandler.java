@@ -1,36 +1,126 @@
 package server;
 
 import lombok.extern.slf4j.Slf4j;
+import model.Headers;
 import model.InternalServerResponse;
+import model.Priority;
 import model.RequestAccumulator;
+import model.ServerRequest;
 import model.ServerResponse;
+import server.interfaces.IScheduledTask;
 import server.interfaces.IRequestHandler;
 import server.interfaces.IRequestParser;
+import server.interfaces.IRequestRouteHandler;
 import server.interfaces.IRequestRouteConfiguration;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 @Slf4j
-public record RequestHandler(IRequestParser requestParser, IRequestRouteConfiguration requestRouteConfiguration, ExecutorService executorService) implements IRequestHandler {
+public record RequestHandler(
+    IRequestParser requestParser,
+    IRequestRouteConfiguration requestRouteConfiguration,
+    ExecutorService executorService,
+    RateLimiter rateLimiter,
+    PubSub pubSub
+) implements IRequestHandler {
+    /**
+     * Path of batch frames: the body is [Count: 4 bytes] followed by Count complete request frames, the response
+     * body is [Count: 4 bytes] followed by a [Status: 4 bytes][Length: 4 bytes][Body] entry per sub-request in
+     * request order. Sub-requests run in parallel through the normal routes and are not batches themselves.
+     */
+    public static final String BATCH_PATH = "/_batch";
+    public static final int MAX_BATCH_REQUESTS = 4096;
     private static final byte[] BASE_ERROR_RESPONSE = "Unhandled server error".getBytes(StandardCharsets.UTF_8);
-    private static final String KEEP_ALIVE = "Keep-Alive";
+    private static final InternalServerResponse TOO_MANY_REQUESTS =
+        new InternalServerResponse(429, "Rate limit exceeded".getBytes(StandardCharsets.UTF_8));
+    private static final InternalServerResponse NOT_FOUND =
+        new InternalServerResponse(404, "No route for path".getBytes(StandardCharsets.UTF_8));
+
+    public RequestHandler(IRequestParser requestParser, IRequestRouteConfiguration requestRouteConfiguration, ExecutorService executorService) {
+        this(requestParser, requestRouteConfiguration, executorService, null, null);
+    }
+
+    public RequestHandler(
+        IRequestParser requestParser,
+        IRequestRouteConfiguration requestRouteConfiguration,
+        ExecutorService executorService,
+        RateLimiter rateLimiter
+    ) {
+        this(requestParser, requestRouteConfiguration, executorService, rateLimiter, null);
+    }
 
     @Override
     public CompletableFuture<ServerResponse> handleRequest(RequestAccumulator requestBody) {
-        var requestContext = requestParser.parseRequest(requestBody);
-        var stayAlive = "true".equalsIgnoreCase(requestContext.headers().getOrDefault(KEEP_ALIVE, "false"));
-        return CompletableFuture
-            .supplyAsync(() -> requestRouteConfiguration.getHandler(requestContext.path()), executorService)
-            .thenCompose(requestRouteHandler -> requestRouteHandler.handleRequest(requestContext))
-            .thenApply(internalServerResponse -> new ServerResponse(requestContext, internalServerResponse, stayAlive))
-            .exceptionally(ex -> {
-                log.error(ex.getMessage(), ex);
-                var internalServerResponse = new InternalServerResponse(500, BASE_ERROR_RESPONSE);
-                return new ServerResponse(requestContext, internalServerResponse, stayAlive);
-            });
+        var future = new CompletableFuture<ServerResponse>();
+        handleRequest(requestBody, (response, ex) -> future.complete(response));
+        return future;
+    }
+
+    /**
+     * Parses on the caller's thread, then runs the handler on the executor. Routes that forward
+     * requests also get a copy of the header block. Handler failures become a
+     * 500 response, so the callback always gets a response. Requests failing the header checks (see
+     * {@link #checkHeader(RequestAccumulator)}) are answered right away, without a task, and so are subscribe
+     * frames when pub/sub is enabled.
+     */
+    @Override
+    public void handleRequest(RequestAccumulator requestBody, BiConsumer<ServerResponse, Throwable> callback) {
+        var request = requestParser.parseRequest(requestBody);
+        try {
+            handleRequest(requestBody, request, callback);
+        } catch (RuntimeException e) {
+            // nothing took the request over (e.g. the executor rejected it while shutting down), delete its spilled body
+            request.release();
+            throw e;
+        }
+    }
+
+    private void handleRequest(RequestAccumulator requestBody, ServerRequest requestContext, BiConsumer<ServerResponse, Throwable> callback) {
+        var route = requestRouteConfiguration.findHandler(requestContext.path());
+        if (route != null && route.forwardsHeaderBlock()) {
+            // the accumulator is reused once we return
+            requestContext = requestContext.withHeaderBlock(requestBody.extractHeaderBytes());
+        }
+        if (!requestBody.isHeaderChecked()) {
+            var rejection = check(requestContext, route, requestContext.bodyLength());
+            if (rejection != null) {
+                callback.accept(new ServerResponse(requestContext, rejection, requestContext.isKeepAlive()), null);
+                return;
+            }
+        }
+        if (pubSub != null && PubSub.handles(requestContext.path())) {
+            var connection = callback instanceof Connection.PendingResponse slot ? slot.connection() : null;
+            callback.accept(new ServerResponse(requestContext, pubSub.handle(requestContext, connection), requestContext.isKeepAlive()), null);
+            return;
+        }
+        var connection = callback instanceof Connection.PendingResponse slot ? slot.connection() : callback;
+        executorService.execute(new Dispatch(requestContext, callback, connection));
+    }
+
+    /**
+     * Checks a request whose body is still on its way: rate limit, route lookup (404 for unknown paths) and the
+     * route's own {@link server.interfaces.IRequestRouteHandler#checkHeader} checks.
+     */
+    @Override
+    public ServerResponse checkHeader(RequestAccumulator requestBody) {
+        var request = requestParser.parseHeader(requestBody);
+        var rejection = check(request, requestRouteConfiguration.findHandler(request.path()), requestBody.bodyLength());
+        return rejection == null ? null : new ServerResponse(request, rejection, request.isKeepAlive());
+    }
+
+    private InternalServerResponse check(ServerRequest request, IRequestRouteHandler route, long bodyLength) {
+        if (rateLimiter != null && !rateLimiter.tryAcquire(request.headers(), 1)) return TOO_MANY_REQUESTS;
+        var path = request.path();
+        if (BATCH_PATH.equals(path) || pubSub != null && PubSub.handles(path)) return null;
+        if (route == null) return NOT_FOUND;
+        return route.checkHeader(request, bodyLength);
     }
 
     @Override
@@ -45,4 +135,204 @@ public record RequestHandler(IRequestParser requestParser, IRequestRouteConfigur
             this.executorService.shutdownNow();
         }
     }
+
+    /**
+     * One object per request that is both the executor task and the completion callback of the route handler's
+     * future, instead of a chain of future stages and lambdas. It carries the request's Priority header and its
+     * client (Client-Id header, otherwise the connection) so a {@link BoundedVirtualThreadExecutor} can schedule it.
+     */
+    private final class Dispatch implements IScheduledTask, BiConsumer<InternalServerResponse, Throwable> {
+        private final ServerRequest requestContext;
+        private final BiConsumer<ServerResponse, Throwable> callback;
+        private final Object defaultFlowKey; // the connection, or the batch's flow for sub-requests
+
+        private Dispatch(ServerRequest requestContext, BiConsumer<ServerResponse, Throwable> callback, Object defaultFlowKey) {
+            this.requestContext = requestContext;
+            this.callback = callback;
+            this.defaultFlowKey = defaultFlowKey;
+        }
+
+        @Override
+        public Priority priority() {
+            return requestContext.headers().priority();
+        }
+
+        @Override
+        public Object flowKey() {
+            var clientId = requestContext.headers().get(Headers.CLIENT_ID);
+            return clientId != null ? clientId : defaultFlowKey;
+        }
+
+        @Override
+        public void run() {
+            if (BATCH_PATH.equals(requestContext.path()) && callback instanceof Batch.Part) {
+                accept(new InternalServerResponse(400, "Batches can not be nested".getBytes(StandardCharsets.UTF_8)), null);
+                return;
+            }
+            if (BATCH_PATH.equals(requestContext.path())) {
+                new Batch(this).dispatch();
+                return;
+            }
+            if (pubSub != null && PubSub.handles(requestContext.path())) {
+                accept(pubSub.handle(requestContext, null), null);
+                return;
+            }
+            CompletableFuture<InternalServerResponse> future;
+            try {
+                var route = requestRouteConfiguration.findHandler(requestContext.path());
+                if (route == null) {
+                    accept(NOT_FOUND, null);
+                    return;
+                }
+                if (callback instanceof Batch.Part) {
+                    // sub-requests did not go through check()
+                    var rejection = route.checkHeader(requestContext, requestContext.bodyLength());
+                    if (rejection != null) {
+                        accept(rejection, null);
+                        return;
+                    }
+                }
+                future = route.handleRequest(requestContext);
+            } catch (Exception e) {
+                accept(null, e);
+                return;
+            }
+            if (!future.isDone()) {
+                future.whenComplete(this);
+                return;
+            }
+            // already completed (the common case for synchronous handlers): no completion stage needed
+            InternalServerResponse internalServerResponse = null;
+            Throwable failure = null;
+            try {
+                internalServerResponse = future.join();
+            } catch (CompletionException e) {
+                failure = e.getCause();
+            } catch (Exception e) {
+                failure = e;
+            }
+            accept(internalServerResponse, failure);
+        }
+
+        @Override
+        public void accept(InternalServerResponse internalServerResponse, Throwable ex) {
+            if (ex != null) {
+                log.error(ex.getMessage(), ex);
+                internalServerResponse = new InternalServerResponse(500, BASE_ERROR_RESPONSE);
+            }
+            callback.accept(new ServerResponse(requestContext, internalServerResponse, requestContext.isKeepAlive()), null);
+        }
+    }
+
+    /**
+     * Fans a batch frame out into one Dispatch per sub-request and answers the batch once the last one finished.
+     * Zero-copy sub-responses are copied into the aggregated body and released right away.
+     */
+    private final class Batch {
+        private final Dispatch dispatch;
+        private ServerRequest[] requests;
+        private InternalServerResponse[] responses;
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        private Batch(Dispatch dispatch) {
+            this.dispatch = dispatch;
+        }
+
+        void dispatch() {
+            var batchRequest = dispatch.requestContext;
+            if (batchRequest.isBodySpilled()) {
+                dispatch.accept(error(413, "Batch frames are limited to the spill threshold"), null);
+                return;
+            }
+            try {
+                var body = ByteBuffer.wrap(batchRequest.requestBody());
+                int count = body.getInt();
+                if (count < 0 || count > MAX_BATCH_REQUESTS) throw new IllegalArgumentException("Invalid batch size " + count);
+                requests = new ServerRequest[count];
+                for (int i = 0; i < count; i++) {
+                    requests[i] = requestParser.parseFrame(body);
+                }
+                if (body.hasRemaining()) throw new IllegalArgumentException(body.remaining() + " trailing bytes");
+            } catch (RuntimeException e) {
+                dispatch.accept(error(400, "Malformed batch: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName())), null);
+                return;
+            }
+            // the frame itself was charged one request already
+            if (rateLimiter != null && requests.length > 1 && !rateLimiter.tryAcquire(batchRequest.headers(), requests.length - 1)) {
+                dispatch.accept(TOO_MANY_REQUESTS, null);
+                return;
+            }
+
+            responses = new InternalServerResponse[requests.length];
+            remaining.set(requests.length);
+            if (requests.length == 0) {
+                complete();
+                return;
+            }
+            var flowKey = dispatch.flowKey();
+            for (int i = 0; i < requests.length; i++) {
+                try {
+                    executorService.execute(new Dispatch(requests[i], new Part(i), flowKey));
+                } catch (RuntimeException e) {
+                    // executor shut down, answer the part without running it
+                    new Part(i).accept(new ServerResponse(requests[i], new InternalServerResponse(500, BASE_ERROR_RESPONSE), false), null);
+                }
+            }
+        }
+
+        private void complete() {
+            long length = 4;
+            for (var response : responses) {
+                length += 8 + response.getBodyLength();
+            }
+            if (length > Integer.MAX_VALUE - 8) {
+                dispatch.accept(error(500, "Batch response too large: " + length + " bytes"), null);
+                return;
+            }
+            var body = ByteBuffer.allocate((int) length);
+            body.putInt(responses.length);
+            for (var response : responses) {
+                body.putInt(response.getStatusCode());
+                body.putInt(response.getBodyLength());
+                body.put(response.getResponseBody());
+            }
+            dispatch.accept(new InternalServerResponse(200, body.array()), null);
+        }
+
+        private static InternalServerResponse error(int status, String message) {
+            return new InternalServerResponse(status, message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Callback of one sub-request.
+         */
+        private final class Part implements BiConsumer<ServerResponse, Throwable> {
+            private final int index;
+
+            private Part(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public void accept(ServerResponse response, Throwable ex) {
+                var internal = response.internalServerResponse();
+                responses[index] = internal.getBodyBuffers() == null
+                    ? internal
+                    : new InternalServerResponse(internal.getStatusCode(), copy(internal.getBodyBuffers(), internal.getBodyLength()));
+                response.release();
+                if (remaining.decrementAndGet() == 0) complete();
+            }
+        }
+
+        private static byte[] copy(ByteBuffer[] buffers, int length) {
+            var bytes = new byte[length];
+            int offset = 0;
+            for (var buffer : buffers) {
+                int n = buffer.remaining();
+                buffer.duplicate().get(bytes, offset, n);
+                offset += n;
+            }
+            return bytes;
+        }
+    }
 }
@@ -1,13 +1,15 @@
 package server;
 
+import model.Headers;
+import model.Priority;
 import model.RequestAccumulator;
 import model.ServerRequest;
+import model.SpilledBody;
 import server.interfaces.IRequestParser;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * [HeaderLength: 4 bytes][BodyLength: 4 bytes][Header bytes][Body bytes]
@@ -15,45 +17,96 @@ import java.util.Map;
  * [PathLength: 2 bytes][Path bytes][HeaderCount: 2 bytes][Header1][Header2]...
  * Each header entry:
  * [KeyLength: 2 bytes][Key bytes][ValueLength: 2 bytes][Value bytes]
- *
+ * <p>
+ * Strings are decoded straight from the accumulated frame, well-known header keys and values are matched on their
+ * bytes and mapped to shared constants instead of being decoded. Paths and header keys go through a small cache
+ * since every request repeats them.
  */
 public class RequestParser implements IRequestParser {
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private static final String[] WELL_KNOWN = {
+        Headers.KEEP_ALIVE, "true", "false",
+        Headers.PRIORITY, Priority.CRITICAL.headerValue(), Priority.INTERACTIVE.headerValue(),
+        Priority.NORMAL.headerValue(), Priority.BATCH.headerValue()
+    };
+    private static final byte[][] WELL_KNOWN_BYTES = new byte[WELL_KNOWN.length][];
+
+    static {
+        for (int i = 0; i < WELL_KNOWN.length; i++) {
+            WELL_KNOWN_BYTES[i] = WELL_KNOWN[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final StringCache names = new StringCache(256);
+
     @Override
     public ServerRequest parseRequest(RequestAccumulator requestContent) {
-        // Extract header and body bytes
-        byte[] headerBytes = requestContent.extractHeaderBytes();
-        byte[] bodyBytes = requestContent.extractBodyBytes();
+        // Header bytes are parsed in place, the body is copied out of the frame
+        ByteBuffer buffer = requestContent.headerBuffer();
+        byte[] bodyBytes = requestContent.isBodySpilled() ? EMPTY_BODY : requestContent.extractBodyBytes();
+        var request = parseHeaderBlock(buffer, bodyBytes, null);
+        if (!requestContent.isBodySpilled()) return request;
+        // taken only once the header block parsed, the accumulator still deletes it when a malformed one throws
+        return new ServerRequest(request.path(), request.headers(), bodyBytes, requestContent.takeSpilledBody());
+    }
 
-        ByteBuffer buffer = ByteBuffer.wrap(headerBytes);
+    @Override
+    public ServerRequest parseHeader(RequestAccumulator requestContent) {
+        return parseHeaderBlock(requestContent.headerBuffer(), EMPTY_BODY, null);
+    }
 
+    /**
+     * Parses the complete frame at the buffer's position, which must be backed by an array, and moves the position
+     * past it. Used for the sub-requests packed into a batch frame.
+     */
+    @Override
+    public ServerRequest parseFrame(ByteBuffer frame) {
+        int headerLength = frame.getInt();
+        int bodyLength = frame.getInt();
+        if (headerLength < 0 || bodyLength < 0 || (long) headerLength + bodyLength > frame.remaining()) {
+            throw new IllegalArgumentException("Invalid frame lengths: header=" + headerLength + ", body=" + bodyLength);
+        }
+        var header = frame.slice(frame.position(), headerLength);
+        frame.position(frame.position() + headerLength);
+        byte[] bodyBytes = bodyLength == 0 ? EMPTY_BODY : new byte[bodyLength];
+        frame.get(bodyBytes);
+        return parseHeaderBlock(header, bodyBytes, null);
+    }
+
+    private ServerRequest parseHeaderBlock(ByteBuffer buffer, byte[] bodyBytes, SpilledBody spilledBody) {
         // --- Parse path ---
-        short pathLength = buffer.getShort(); // 2 bytes for path length
-        byte[] pathBytes = new byte[pathLength];
-        buffer.get(pathBytes);
-        String path = new String(pathBytes, StandardCharsets.UTF_8);
+        String path = readString(buffer, false, names);
 
         // --- Parse headers ---
-        short headerCount = buffer.getShort(); // 2 bytes for number of headers
-        Map<String, String> headers = new HashMap<>();
+        int headerCount = buffer.getShort() & 0xFFFF; // 2 bytes for number of headers
+        Headers headers = new Headers(headerCount);
         for (int i = 0; i < headerCount; i++) {
-            short keyLen = buffer.getShort();
-            byte[] keyBytes = new byte[keyLen];
-            buffer.get(keyBytes);
-            String key = new String(keyBytes, StandardCharsets.UTF_8);
-
-            short valLen = buffer.getShort();
-            byte[] valBytes = new byte[valLen];
-            buffer.get(valBytes);
-            String value = new String(valBytes, StandardCharsets.UTF_8);
-
+            String key = readString(buffer, true, names);
+            String value = readString(buffer, true, null);
             headers.put(key, value);
         }
 
         // --- Build ServerRequest ---
-        return ServerRequest.builder()
-            .path(path)
-            .headers(headers)
-            .requestBody(bodyBytes)
-            .build();
+        return new ServerRequest(path, headers, bodyBytes, spilledBody);
+    }
+
+    /**
+     * Reads [length: 2 bytes][UTF-8 bytes] from the buffer's backing array.
+     */
+    private static String readString(ByteBuffer buffer, boolean wellKnown, StringCache cache) {
+        int length = buffer.getShort() & 0xFFFF;
+        int offset = buffer.arrayOffset() + buffer.position();
+        buffer.position(buffer.position() + length);
+        byte[] array = buffer.array();
+        if (wellKnown) {
+            for (int i = 0; i < WELL_KNOWN_BYTES.length; i++) {
+                if (matches(array, offset, length, WELL_KNOWN_BYTES[i])) return WELL_KNOWN[i];
+            }
+        }
+        return cache != null ? cache.get(array, offset, length) : new String(array, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static boolean matches(byte[] array, int offset, int length, byte[] expected) {
+        return length == expected.length && Arrays.equals(array, offset, offset + length, expected, 0, length);
     }
 }
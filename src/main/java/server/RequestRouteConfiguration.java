@@ -22,4 +22,9 @@ public class RequestRouteConfiguration implements IRequestRouteConfiguration {
 
         return handlers.get(path);
     }
+
+    @Override
+    public IRequestRouteHandler findHandler(String path) {
+        return path == null ? null : handlers.get(path);
+    }
 }
@@ -0,0 +1,205 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The limits of a running server that can be changed without a restart, so the JIT-compiled code, pooled buffers
+ * and open connections survive tuning: the worker limit, connection idle timeout and backpressure limits, the
+ * memory budget and the buffer pool size. Changes take effect on the next decision that reads them: a connection
+ * uses the new idle timeout for its next read and the new backpressure limits for its next frame.
+ * <p>
+ * Changed through JMX ({@code tiny-tcp:type=RuntimeLimits,port=<port>}) or by {@link #apply(ApplicationConfig)}
+ * with a re-read configuration, e.g. from a {@link ConfigFileWatcher}. Other settings need a restart.
+ */
+@Slf4j
+public class RuntimeLimits implements RuntimeLimitsMXBean {
+    private final MemoryBudget memoryBudget;
+    private final BoundedVirtualThreadExecutor executor; // null if the request handler runs its tasks elsewhere
+    private volatile ApplicationConfig.ConnectionProperties connectionProperties;
+    private volatile long connectionIdleTimeoutMs;
+
+    public RuntimeLimits(ApplicationConfig config, MemoryBudget memoryBudget, BoundedVirtualThreadExecutor executor) {
+        this.memoryBudget = memoryBudget;
+        this.executor = executor;
+        this.connectionProperties = config.connectionProperties();
+        this.connectionIdleTimeoutMs = config.serverProperties().connectionIdleTimeoutMs();
+    }
+
+    ApplicationConfig.ConnectionProperties connectionProperties() {
+        return connectionProperties;
+    }
+
+    long connectionIdleTimeoutMs() {
+        return connectionIdleTimeoutMs;
+    }
+
+    /**
+     * Applies the tunable limits of a configuration and logs the ones that changed. The configuration is checked
+     * as a whole first, an invalid one changes nothing.
+     */
+    public synchronized void apply(ApplicationConfig config) {
+        var server = config.serverProperties();
+        var connection = config.connectionProperties();
+        var memory = config.memoryProperties();
+        var buffers = config.byteBufferProperties();
+        requirePositive("maxWorkerThreads", server.maxWorkerThreads());
+        requirePositive("connectionIdleTimeoutMs", server.connectionIdleTimeoutMs());
+        requireConnectionProperties(connection);
+        requirePositive("maxInFlightBytes", memory.maxInFlightBytes());
+        requirePositive("maxFrameBytes", memory.maxFrameBytes());
+        requirePositive("maxPoolSize", buffers.maxPoolSize());
+        if (buffers.minPoolSize() < 0 || buffers.minPoolSize() > buffers.maxPoolSize()) {
+            throw new IllegalArgumentException("Invalid buffer pool size: min=" + buffers.minPoolSize() + ", max=" + buffers.maxPoolSize());
+        }
+
+        List<String> changes = new ArrayList<>();
+        if (executor != null && executor.getMaxConcurrentTasks() != server.maxWorkerThreads()) {
+            changes.add("maxWorkerThreads=" + server.maxWorkerThreads());
+            executor.setMaxConcurrentTasks(server.maxWorkerThreads());
+        }
+        if (connectionIdleTimeoutMs != server.connectionIdleTimeoutMs()) {
+            changes.add("connectionIdleTimeoutMs=" + server.connectionIdleTimeoutMs());
+            connectionIdleTimeoutMs = server.connectionIdleTimeoutMs();
+        }
+        if (!connectionProperties.equals(connection)) {
+            changes.add(connection.toString());
+            connectionProperties = connection;
+        }
+        if (memoryBudget.getLimitBytes() != memory.maxInFlightBytes()) {
+            changes.add("maxInFlightBytes=" + memory.maxInFlightBytes());
+            memoryBudget.setLimitBytes(memory.maxInFlightBytes());
+        }
+        if (memoryBudget.getMaxFrameBytes() != memory.maxFrameBytes()) {
+            changes.add("maxFrameBytes=" + memory.maxFrameBytes());
+            memoryBudget.setMaxFrameBytes(memory.maxFrameBytes());
+        }
+        var pool = ByteBufferPool.getInstance();
+        if (pool.getMinPoolSize() != buffers.minPoolSize() || pool.getMaxPoolSize() != buffers.maxPoolSize()) {
+            changes.add("buffer pool " + buffers.minPoolSize() + ".." + buffers.maxPoolSize());
+            pool.resize(buffers.minPoolSize(), buffers.maxPoolSize());
+        }
+        if (pool.getBufferSize() != buffers.bufferSize()) {
+            log.warn("Ignoring bufferSize {}, the buffer size can only change with a restart", buffers.bufferSize());
+        }
+        if (!changes.isEmpty()) log.info("Applied runtime limits: {}", String.join(", ", changes));
+    }
+
+    private static void requirePositive(String name, long value) {
+        if (value <= 0) throw new IllegalArgumentException(name + " must be positive: " + value);
+    }
+
+    private static void requireConnectionProperties(ApplicationConfig.ConnectionProperties properties) {
+        requirePositive("maxInFlightRequests", properties.maxInFlightRequests());
+        requirePositive("highWatermarkBytes", properties.highWatermarkBytes());
+        if (properties.lowWatermarkBytes() < 0 || properties.lowWatermarkBytes() > properties.highWatermarkBytes()) {
+            throw new IllegalArgumentException("lowWatermarkBytes must be between 0 and highWatermarkBytes: " + properties.lowWatermarkBytes());
+        }
+    }
+
+    @Override
+    public int getMaxWorkerThreads() {
+        return executor == null ? -1 : executor.getMaxConcurrentTasks();
+    }
+
+    @Override
+    public void setMaxWorkerThreads(int maxWorkerThreads) {
+        if (executor == null) throw new UnsupportedOperationException("The request handler does not use a BoundedVirtualThreadExecutor");
+        executor.setMaxConcurrentTasks(maxWorkerThreads);
+    }
+
+    @Override
+    public long getConnectionIdleTimeoutMs() {
+        return connectionIdleTimeoutMs;
+    }
+
+    @Override
+    public void setConnectionIdleTimeoutMs(long connectionIdleTimeoutMs) {
+        requirePositive("connectionIdleTimeoutMs", connectionIdleTimeoutMs);
+        this.connectionIdleTimeoutMs = connectionIdleTimeoutMs;
+    }
+
+    @Override
+    public int getMaxInFlightRequests() {
+        return connectionProperties.maxInFlightRequests();
+    }
+
+    @Override
+    public synchronized void setMaxInFlightRequests(int maxInFlightRequests) {
+        var current = connectionProperties;
+        setConnectionProperties(new ApplicationConfig.ConnectionProperties(maxInFlightRequests, current.highWatermarkBytes(), current.lowWatermarkBytes()));
+    }
+
+    @Override
+    public long getHighWatermarkBytes() {
+        return connectionProperties.highWatermarkBytes();
+    }
+
+    @Override
+    public synchronized void setHighWatermarkBytes(long highWatermarkBytes) {
+        var current = connectionProperties;
+        setConnectionProperties(new ApplicationConfig.ConnectionProperties(current.maxInFlightRequests(), highWatermarkBytes, current.lowWatermarkBytes()));
+    }
+
+    @Override
+    public long getLowWatermarkBytes() {
+        return connectionProperties.lowWatermarkBytes();
+    }
+
+    @Override
+    public synchronized void setLowWatermarkBytes(long lowWatermarkBytes) {
+        var current = connectionProperties;
+        setConnectionProperties(new ApplicationConfig.ConnectionProperties(current.maxInFlightRequests(), current.highWatermarkBytes(), lowWatermarkBytes));
+    }
+
+    // guarded by this
+    private void setConnectionProperties(ApplicationConfig.ConnectionProperties properties) {
+        requireConnectionProperties(properties);
+        connectionProperties = properties;
+    }
+
+    @Override
+    public long getMaxInFlightBytes() {
+        return memoryBudget.getLimitBytes();
+    }
+
+    @Override
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        memoryBudget.setLimitBytes(maxInFlightBytes);
+    }
+
+    @Override
+    public long getMaxFrameBytes() {
+        return memoryBudget.getMaxFrameBytes();
+    }
+
+    @Override
+    public void setMaxFrameBytes(long maxFrameBytes) {
+        memoryBudget.setMaxFrameBytes(maxFrameBytes);
+    }
+
+    @Override
+    public int getMinBufferPoolSize() {
+        return ByteBufferPool.getInstance().getMinPoolSize();
+    }
+
+    @Override
+    public synchronized void setMinBufferPoolSize(int minBufferPoolSize) {
+        var pool = ByteBufferPool.getInstance();
+        pool.resize(minBufferPoolSize, pool.getMaxPoolSize());
+    }
+
+    @Override
+    public int getMaxBufferPoolSize() {
+        return ByteBufferPool.getInstance().getMaxPoolSize();
+    }
+
+    @Override
+    public synchronized void setMaxBufferPoolSize(int maxBufferPoolSize) {
+        var pool = ByteBufferPool.getInstance();
+        pool.resize(pool.getMinPoolSize(), maxBufferPoolSize);
+    }
+}
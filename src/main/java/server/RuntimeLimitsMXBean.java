@@ -0,0 +1,42 @@
+package server;
+
+/**
+ * JMX view of a server's {@link RuntimeLimits}, every attribute can be changed while the server runs.
+ */
+public interface RuntimeLimitsMXBean {
+    int getMaxWorkerThreads();
+
+    void setMaxWorkerThreads(int maxWorkerThreads);
+
+    long getConnectionIdleTimeoutMs();
+
+    void setConnectionIdleTimeoutMs(long connectionIdleTimeoutMs);
+
+    int getMaxInFlightRequests();
+
+    void setMaxInFlightRequests(int maxInFlightRequests);
+
+    long getHighWatermarkBytes();
+
+    void setHighWatermarkBytes(long highWatermarkBytes);
+
+    long getLowWatermarkBytes();
+
+    void setLowWatermarkBytes(long lowWatermarkBytes);
+
+    long getMaxInFlightBytes();
+
+    void setMaxInFlightBytes(long maxInFlightBytes);
+
+    long getMaxFrameBytes();
+
+    void setMaxFrameBytes(long maxFrameBytes);
+
+    int getMinBufferPoolSize();
+
+    void setMinBufferPoolSize(int minBufferPoolSize);
+
+    int getMaxBufferPoolSize();
+
+    void setMaxBufferPoolSize(int maxBufferPoolSize);
+}
@@ -0,0 +1,99 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single thread driving the readiness of the channels registered with it, the server's
+ * {@link SelectorSocketChannel}s and the client's connections. Everything that touches a channel's selection key
+ * runs on this thread via {@link #execute(Runnable)}, and so do the completion handlers of the channels.
+ */
+@Slf4j
+public final class SelectorLoop implements Closeable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public SelectorLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    public Selector selector() {
+        return selector;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // tasks queued by our own handlers do not wake the selector, so do not block while there are some
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+
+                var keys = selector.selectedKeys();
+                for (SelectionKey key : keys) {
+                    var handler = (Handler) key.attachment();
+                    handler.handle(key);
+                }
+                keys.clear();
+            } catch (Exception e) {
+                if (running) log.error("Selector loop error: {}", e.getMessage(), e);
+            }
+        }
+        // let channels closed during shutdown fail their pending operations
+        runTasks();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Selector task failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(2000);
+            selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignore) {
+            // ignore
+        }
+    }
+
+    /**
+     * Attachment of every key registered with the loop's selector.
+     */
+    public interface Handler {
+        /**
+         * Called on the loop thread for a selected key.
+         */
+        void handle(SelectionKey key);
+    }
+}
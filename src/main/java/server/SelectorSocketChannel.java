@@ -0,0 +1,262 @@
+package server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.channels.ReadPendingException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritePendingException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ConnectionChannel} over a non-blocking {@link SocketChannel} driven by a {@link SelectorLoop}, for channels
+ * the JDK has no asynchronous implementation for, e.g. Unix domain sockets. Completion handlers always run on the
+ * loop thread, never inside the read() or write() call that started the operation.
+ */
+final class SelectorSocketChannel implements ConnectionChannel, SelectorLoop.Handler {
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean readPending = new AtomicBoolean();
+    private final AtomicBoolean writePending = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Runnable startReadTask = this::startRead;
+    private final Runnable writeTask = this::write;
+    private final Runnable checkTimeoutTask = this::checkReadTimeout;
+    private final Runnable timerTask = () -> execute(checkTimeoutTask);
+
+    // handed over to the loop thread with the task that starts the operation
+    private ByteBuffer readBuffer;
+    private long readTimeoutNanos;
+    private Object readAttachment;
+    private CompletionHandler<Integer, Object> readHandler;
+    private ByteBuffer[] writeBuffers;
+    private int writeOffset;
+    private int writeLength;
+    private Object writeAttachment;
+    private CompletionHandler<Long, Object> writeHandler;
+
+    // only touched by the loop thread
+    private SelectionKey key;
+    private boolean reading = false;
+    private boolean writeWaiting = false;
+    private long readDeadline = 0;
+    private boolean timerScheduled = false;
+
+    SelectorSocketChannel(SocketChannel channel, SelectorLoop loop, ScheduledExecutorService scheduler) throws IOException {
+        channel.configureBlocking(false);
+        this.channel = channel;
+        this.loop = loop;
+        this.scheduler = scheduler;
+        loop.execute(this::register);
+    }
+
+    private void register() {
+        try {
+            key = channel.register(loop.selector(), 0, this);
+        } catch (IOException e) {
+            // closed before it was registered, pending operations fail in failPending()
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        if (!readPending.compareAndSet(false, true)) throw new ReadPendingException();
+        readBuffer = dst;
+        readTimeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+        readAttachment = attachment;
+        readHandler = (CompletionHandler<Integer, Object>) handler;
+        execute(startReadTask);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Long, ? super A> handler) {
+        if (!writePending.compareAndSet(false, true)) throw new WritePendingException();
+        writeBuffers = srcs;
+        writeOffset = offset;
+        writeLength = length;
+        writeAttachment = attachment;
+        writeHandler = (CompletionHandler<Long, Object>) handler;
+        execute(writeTask);
+    }
+
+    private void execute(Runnable task) {
+        loop.execute(task);
+    }
+
+    private void startRead() {
+        if (!channel.isOpen() || key == null) {
+            failRead(new AsynchronousCloseException());
+            return;
+        }
+        if (!readBuffer.hasRemaining()) {
+            completeRead(0);
+            return;
+        }
+        if (readTimeoutNanos > 0) {
+            readDeadline = System.nanoTime() + readTimeoutNanos;
+            scheduleTimer(readTimeoutNanos);
+        }
+        reading = true;
+        updateInterest();
+    }
+
+    private void write() {
+        if (!channel.isOpen() || key == null) {
+            failWrite(new AsynchronousCloseException());
+            return;
+        }
+        long written;
+        try {
+            written = channel.write(writeBuffers, writeOffset, writeLength);
+        } catch (IOException e) {
+            failWrite(e);
+            return;
+        }
+        if (written == 0 && hasRemaining(writeBuffers, writeOffset, writeLength)) {
+            // socket buffer is full, wait for OP_WRITE
+            writeWaiting = true;
+            updateInterest();
+            return;
+        }
+        completeWrite(written);
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        if (!key.isValid()) return;
+        if (key.isWritable() && writeWaiting) {
+            write();
+        }
+        if (key.isValid() && key.isReadable() && reading) {
+            int bytesRead;
+            try {
+                bytesRead = channel.read(readBuffer);
+            } catch (IOException e) {
+                failRead(e);
+                return;
+            }
+            if (bytesRead != 0) completeRead(bytesRead);
+        }
+    }
+
+    private void updateInterest() {
+        if (key == null || !key.isValid()) return;
+        int ops = (reading ? SelectionKey.OP_READ : 0) | (writeWaiting ? SelectionKey.OP_WRITE : 0);
+        if (key.interestOps() != ops) key.interestOps(ops);
+    }
+
+    /**
+     * At most one timer per channel, a timer firing before the deadline of the current read re-arms itself.
+     */
+    private void scheduleTimer(long delayNanos) {
+        if (timerScheduled) return;
+        try {
+            scheduler.schedule(timerTask, delayNanos, TimeUnit.NANOSECONDS);
+            timerScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // server is shutting down
+        }
+    }
+
+    private void checkReadTimeout() {
+        timerScheduled = false;
+        if (!reading || readDeadline == 0) return;
+        long remaining = readDeadline - System.nanoTime();
+        if (remaining > 0) {
+            scheduleTimer(remaining);
+            return;
+        }
+        failRead(new InterruptedByTimeoutException());
+    }
+
+    private void completeRead(int bytesRead) {
+        var handler = readHandler;
+        var attachment = readAttachment;
+        clearRead();
+        handler.completed(bytesRead, attachment);
+    }
+
+    private void failRead(Throwable exc) {
+        var handler = readHandler;
+        if (handler == null) return;
+        var attachment = readAttachment;
+        clearRead();
+        handler.failed(exc, attachment);
+    }
+
+    private void clearRead() {
+        readHandler = null;
+        readAttachment = null;
+        readBuffer = null;
+        reading = false;
+        readDeadline = 0;
+        updateInterest();
+        readPending.set(false);
+    }
+
+    private void completeWrite(long written) {
+        var handler = writeHandler;
+        var attachment = writeAttachment;
+        clearWrite();
+        handler.completed(written, attachment);
+    }
+
+    private void failWrite(Throwable exc) {
+        var handler = writeHandler;
+        if (handler == null) return;
+        var attachment = writeAttachment;
+        clearWrite();
+        handler.failed(exc, attachment);
+    }
+
+    private void clearWrite() {
+        writeHandler = null;
+        writeAttachment = null;
+        writeBuffers = null;
+        writeWaiting = false;
+        updateInterest();
+        writePending.set(false);
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffers[i].hasRemaining()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) return;
+        try {
+            channel.close();
+        } finally {
+            execute(this::failPending);
+        }
+    }
+
+    private void failPending() {
+        if (key != null) key.cancel();
+        failRead(new AsynchronousCloseException());
+        failWrite(new AsynchronousCloseException());
+    }
+
+    @Override
+    public SocketAddress remoteAddress() {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
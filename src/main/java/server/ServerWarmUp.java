@@ -0,0 +1,198 @@
+package server;
+
+import client.RequestEncoder;
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.Headers;
+import server.interfaces.IRequestHandler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs requests through the complete server path (accept, {@link Connection}, parser, router, handlers, response
+ * encoding and writes) before the real port is bound, so the first clients after a deploy do not hit interpreted
+ * or C1-compiled code. The server listens on an ephemeral loopback port meanwhile, served by the same
+ * {@link AcceptCompletionHandler} and request handler as the real one, and the warm-up clients send pipelined
+ * keep-alive frames round and round until the JIT compiled nothing for quietPeriodMs or maxDurationMs passed.
+ * <p>
+ * Frames come from a traffic capture (see {@link TrafficRecorder}) or from the configured requests. Handlers see
+ * them like any other request, so routes with side effects should be left out of the warm-up set.
+ */
+@Slf4j
+final class ServerWarmUp {
+    private static final int MAX_CAPTURED_FRAMES = 10_000;
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private final ApplicationConfig config;
+    private final ApplicationConfig.WarmUpProperties properties;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running = true;
+
+    ServerWarmUp(ApplicationConfig config) {
+        this.config = config;
+        this.properties = config.warmUpProperties();
+    }
+
+    void run(IRequestHandler requestHandler, ScheduledExecutorService scheduler, MemoryBudget memoryBudget, RuntimeLimits runtimeLimits) throws IOException {
+        var frames = frames();
+        if (frames.isEmpty()) {
+            log.warn("Skipping warm-up, no requests configured");
+            return;
+        }
+
+        long start = System.nanoTime();
+        var compilation = ManagementFactory.getCompilationMXBean();
+        long compilationStart = compilationTime(compilation);
+        boolean settled = false;
+        try (var serverChannel = AsynchronousServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            // warm-up frames are neither captured nor logged
+            serverChannel.accept(requestHandler, new AcceptCompletionHandler(serverChannel, config, scheduler, memoryBudget, runtimeLimits, null, null));
+            var address = serverChannel.getLocalAddress();
+
+            var drivers = new ArrayList<Thread>();
+            for (int i = 0; i < properties.connections(); i++) {
+                int offset = i * frames.size() / properties.connections();
+                drivers.add(Thread.ofPlatform().name("warm-up-" + i).daemon().start(() -> drive(address, frames, offset)));
+            }
+
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(properties.maxDurationMs());
+            long quietNanos = TimeUnit.MILLISECONDS.toNanos(properties.quietPeriodMs());
+            long lastCompilationTime = compilationStart;
+            long quietSince = System.nanoTime();
+            while (System.nanoTime() < deadline) {
+                sleep(POLL_INTERVAL_MS);
+                long compilationTime = compilationTime(compilation);
+                long now = System.nanoTime();
+                if (compilationTime != lastCompilationTime) {
+                    lastCompilationTime = compilationTime;
+                    quietSince = now;
+                } else if (compilation != null && now - quietSince >= quietNanos) {
+                    settled = true;
+                    break;
+                }
+            }
+
+            running = false;
+            for (var driver : drivers) {
+                try {
+                    driver.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        log.info("Warm-up {} after {} ms and {} requests, JIT compiled for {} ms",
+            settled ? "settled" : "stopped at its time budget",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            requests.get(),
+            compilationTime(compilation) - compilationStart);
+    }
+
+    private static long compilationTime(CompilationMXBean compilation) {
+        return compilation != null && compilation.isCompilationTimeMonitoringSupported() ? compilation.getTotalCompilationTime() : 0;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the frames in pipelined rounds of at most maxInFlightRequests and reads every response before the next
+     * round, so the connection never pauses on its backpressure limit.
+     */
+    private void drive(SocketAddress address, List<byte[]> frames, int offset) {
+        int depth = Math.max(1, config.connectionProperties().maxInFlightRequests());
+        var header = ByteBuffer.allocate(8);
+        var discard = ByteBuffer.allocate(8192);
+        try (var channel = SocketChannel.open(address)) {
+            int next = offset;
+            while (running) {
+                var round = new ByteBuffer[depth];
+                for (int i = 0; i < depth; i++) {
+                    round[i] = ByteBuffer.wrap(frames.get(next));
+                    next = (next + 1) % frames.size();
+                }
+                while (round[depth - 1].hasRemaining()) {
+                    channel.write(round);
+                }
+                for (int i = 0; i < depth; i++) {
+                    header.clear();
+                    readFully(channel, header);
+                    int remaining = header.getInt(4);
+                    while (remaining > 0) {
+                        discard.clear().limit(Math.min(remaining, discard.capacity()));
+                        remaining -= readFully(channel, discard);
+                    }
+                }
+                requests.addAndGet(depth);
+            }
+        } catch (IOException e) {
+            log.warn("Warm-up connection failed: {}", e.getMessage());
+        }
+    }
+
+    private static int readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) throw new EOFException("Connection closed by server");
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Warm-up frames, all of them keep-alive so the server does not close the connection after the first response.
+     * Captured frames are decoded by the server's own parser and encoded again like the configured requests.
+     */
+    private List<byte[]> frames() throws IOException {
+        var frames = new ArrayList<byte[]>();
+        if (properties.capture() != null) {
+            var parser = new RequestParser();
+            for (byte[] frame : TrafficRecorder.readFrames(Path.of(properties.capture()), MAX_CAPTURED_FRAMES)) {
+                var request = parser.parseFrame(ByteBuffer.wrap(frame));
+                frames.add(encodeKeepAlive(request.path(), request.headers(), request.requestBody()));
+            }
+        }
+        for (var request : properties.requests()) {
+            var headers = request.headers() == null ? Map.<String, String>of() : request.headers();
+            byte[] body = request.body() == null ? null : request.body().getBytes(StandardCharsets.UTF_8);
+            frames.add(encodeKeepAlive(request.path(), headers, body));
+        }
+        return frames;
+    }
+
+    private static byte[] encodeKeepAlive(String path, Map<String, String> headers, byte[] body) {
+        if (headers.containsKey(Headers.KEEP_ALIVE)) {
+            headers = new LinkedHashMap<>(headers);
+            headers.remove(Headers.KEEP_ALIVE);
+        }
+        var frame = ByteBuffer.allocate(RequestEncoder.encodedSizeKeepAlive(path, headers, body == null ? 0 : body.length));
+        RequestEncoder.encodeKeepAlive(frame, path, headers, body);
+        return frame.array();
+    }
+}
@@ -0,0 +1,41 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Small direct-mapped cache of decoded UTF-8 strings, so the paths and header names every request repeats are not
+ * decoded and allocated again. Lookups are lock-free: entries are immutable and a racing update only replaces one
+ * cached string with another.
+ */
+final class StringCache {
+    private static final int MAX_CACHED_LENGTH = 64;
+
+    private final Entry[] entries;
+    private final int mask;
+
+    StringCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    String get(byte[] array, int offset, int length) {
+        if (length > MAX_CACHED_LENGTH) return new String(array, offset, length, StandardCharsets.UTF_8);
+
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + array[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = entries[index];
+        if (entry != null && Arrays.equals(entry.bytes, 0, entry.bytes.length, array, offset, offset + length)) {
+            return entry.value;
+        }
+        String value = new String(array, offset, length, StandardCharsets.UTF_8);
+        entries[index] = new Entry(Arrays.copyOfRange(array, offset, offset + length), value);
+        return value;
+    }
+
+    private record Entry(byte[] bytes, String value) {}
+}
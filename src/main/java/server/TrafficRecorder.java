@@ -0,0 +1,170 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import model.RequestAccumulator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends a sample of the raw request frames read by the server to memory-mapped segment files, for replaying real
+ * traffic with client.TrafficReplayer. Each segment is preallocated to segmentBytes:
+ * <pre>
+ * [Magic: 4 bytes "TTCP"][Version: 4 bytes][CaptureStartEpochMillis: 8 bytes]
+ * then per recorded request: [OffsetNanos: 8 bytes][FrameLength: 4 bytes][Frame bytes]
+ * </pre>
+ * OffsetNanos is the time since the capture started and FrameLength is the full request frame including its length
+ * prefix. A FrameLength of 0 ends the segment. Writers reserve their record with one atomic add on the segment
+ * position and copy the frame straight from the connection's accumulator, nothing is allocated per request.
+ * Frames with spilled bodies and frames larger than a segment are not recorded, recording stops after maxSegments.
+ * A restarted server continues after the highest segment index in the directory instead of overwriting the
+ * previous capture, {@link CaptureReader} reads them all.
+ */
+@Slf4j
+public class TrafficRecorder implements Closeable {
+    static final int MAGIC = 0x54544350; // "TTCP"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 12;
+
+    private final Path directory;
+    private final String prefix;
+    private final double sampleRate;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long startNanos = System.nanoTime();
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final AtomicLong recorded = new AtomicLong();
+    private int segmentIndex; // guarded by this after construction, and so is segmentCount
+    private int segmentCount = 0;
+    private volatile Segment segment;
+    private volatile boolean stopped = false;
+
+    public TrafficRecorder(ApplicationConfig.CaptureProperties properties, String name) throws IOException {
+        if (properties.segmentBytes() <= SEGMENT_HEADER_BYTES + RECORD_HEADER_BYTES) {
+            throw new IllegalArgumentException("segmentBytes too small: " + properties.segmentBytes());
+        }
+        this.directory = Path.of(properties.directory());
+        this.prefix = name;
+        this.sampleRate = properties.sampleRate();
+        this.segmentBytes = properties.segmentBytes();
+        this.maxSegments = properties.maxSegments();
+        Files.createDirectories(directory);
+        var existing = Utility.segmentIndexes(directory, prefix, ".bin");
+        this.segmentIndex = existing.isEmpty() ? 0 : existing.getLast() + 1;
+        this.segment = openSegment();
+    }
+
+    /**
+     * Records the complete frame in the accumulator if it is sampled.
+     */
+    public void record(RequestAccumulator accumulator) {
+        if (stopped || accumulator.isBodySpilled()) return;
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+        long frameLength = accumulator.frameLength();
+        if (frameLength + RECORD_HEADER_BYTES + SEGMENT_HEADER_BYTES > segmentBytes) return;
+        int recordLength = RECORD_HEADER_BYTES + (int) frameLength;
+
+        long offsetNanos = System.nanoTime() - startNanos;
+        while (true) {
+            var current = segment;
+            if (current == null) return;
+            long start = current.position.getAndAdd(recordLength);
+            if (start + recordLength <= segmentBytes) {
+                accumulator.copyFrameTo(current.buffer, (int) start + RECORD_HEADER_BYTES);
+                current.buffer.putInt((int) start + 8, (int) frameLength);
+                current.buffer.putLong((int) start, offsetNanos);
+                recorded.incrementAndGet();
+                return;
+            }
+            // did not fit, the zeros left behind end the segment
+            roll(current);
+        }
+    }
+
+    /**
+     * Reads up to maxFrames recorded frames of the capture with the given path prefix, segment by segment.
+     */
+    public static List<byte[]> readFrames(Path capture, int maxFrames) throws IOException {
+        var reader = new CaptureReader(capture);
+        var frames = new ArrayList<byte[]>();
+        ByteBuffer frame;
+        while (frames.size() < maxFrames && (frame = reader.next()) != null) {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            frames.add(bytes);
+        }
+        return frames;
+    }
+
+    public long getRecordedRequests() {
+        return recorded.get();
+    }
+
+    private synchronized void roll(Segment full) {
+        if (segment != full) return; // another writer rolled already
+        full.close();
+        if (segmentCount >= maxSegments) {
+            log.warn("Traffic capture stopped after {} segments", maxSegments);
+            stopped = true;
+            segment = null;
+            return;
+        }
+        try {
+            segment = openSegment();
+        } catch (IOException e) {
+            log.error("Traffic capture stopped, failed to open segment: {}", e.getMessage(), e);
+            stopped = true;
+            segment = null;
+        }
+    }
+
+    private Segment openSegment() throws IOException {
+        var path = directory.resolve(String.format("%s-%05d.bin", prefix, segmentIndex));
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            segmentIndex++;
+            segmentCount++;
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, startEpochMillis);
+            log.info("Capturing traffic to {}", path);
+            return new Segment(buffer);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        stopped = true;
+        if (segment != null) {
+            segment.close();
+            segment = null;
+        }
+    }
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final AtomicLong position = new AtomicLong(SEGMENT_HEADER_BYTES);
+
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void close() {
+            // writers still copying into it finish in the mapping, force only flushes what is there
+            buffer.force();
+        }
+    }
+}
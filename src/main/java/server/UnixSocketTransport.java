@@ -0,0 +1,128 @@
+package server;
+
+import lombok.extern.slf4j.Slf4j;
+import model.ApplicationConfig;
+import server.interfaces.IRequestHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Accepts connections on a Unix domain socket and serves them with the same {@link Connection} and
+ * {@link IRequestHandler} as TCP. The JDK has no asynchronous channel for Unix domain sockets, so accepted channels
+ * are wrapped in a {@link SelectorSocketChannel} driven by one of a few selector loops.
+ * <p>
+ * A socket file left behind by a server that did not shut down cleanly is replaced, one that still accepts
+ * connections is not. The file is removed again on close.
+ */
+@Slf4j
+final class UnixSocketTransport implements Closeable {
+    private final Path path;
+    private final IRequestHandler requestHandler;
+    private final ApplicationConfig config;
+    private final ScheduledExecutorService scheduler;
+    private final MemoryBudget memoryBudget;
+    private final RuntimeLimits runtimeLimits;
+    private final TrafficRecorder trafficRecorder;
+    private final AccessLog accessLog;
+    private final SelectorLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private boolean bound = false;
+    private int nextLoop = 0;
+
+    UnixSocketTransport(
+        ApplicationConfig config,
+        IRequestHandler requestHandler,
+        ScheduledExecutorService scheduler,
+        MemoryBudget memoryBudget,
+        RuntimeLimits runtimeLimits,
+        TrafficRecorder trafficRecorder,
+        AccessLog accessLog
+    ) throws IOException {
+        this.path = Path.of(config.unixSocketProperties().path()).toAbsolutePath();
+        this.requestHandler = requestHandler;
+        this.config = config;
+        this.scheduler = scheduler;
+        this.memoryBudget = memoryBudget;
+        this.runtimeLimits = runtimeLimits;
+        this.trafficRecorder = trafficRecorder;
+        this.accessLog = accessLog;
+        int selectorThreads = config.unixSocketProperties().selectorThreads();
+        this.loops = new SelectorLoop[selectorThreads > 0 ? selectorThreads : Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop("uds-selector-" + i);
+        }
+    }
+
+    void start() throws IOException {
+        var address = UnixDomainSocketAddress.of(path);
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            serverChannel.bind(address);
+        } catch (BindException e) {
+            if (isLive(address)) throw e;
+            log.info("Replacing stale socket file {}", path);
+            Files.deleteIfExists(path);
+            serverChannel.bind(address);
+        }
+        bound = true;
+        Thread.ofPlatform().name("uds-acceptor").daemon().start(this::acceptLoop);
+        log.info("Listening on {}", path);
+    }
+
+    private static boolean isLive(UnixDomainSocketAddress address) {
+        try (var ignored = SocketChannel.open(address)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void acceptLoop() {
+        while (serverChannel.isOpen()) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.error("Exception while awaiting client connection", e);
+                continue;
+            }
+            try {
+                var channel = new SelectorSocketChannel(socketChannel, loops[nextLoop], scheduler);
+                nextLoop = (nextLoop + 1) % loops.length;
+                new Connection(channel, requestHandler, config, scheduler, memoryBudget, runtimeLimits, trafficRecorder, accessLog).start();
+            } catch (Exception t) {
+                log.error("Failed to start read for new client: {}", t.getMessage(), t);
+                try {
+                    socketChannel.close();
+                } catch (IOException ignored) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } finally {
+            for (var loop : loops) {
+                loop.close();
+            }
+            // never remove the socket of another server we failed to replace
+            if (bound) Files.deleteIfExists(path);
+        }
+    }
+}
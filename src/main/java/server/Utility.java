@@ -2,10 +2,33 @@ package server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 public class Utility {
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private Utility() {
         // do nothing
     }
+
+    /**
+     * Indexes of the segment files {@code <prefix>-<index><suffix>} in the directory, in ascending order.
+     */
+    public static List<Integer> segmentIndexes(Path directory, String prefix, String suffix) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (var files = Files.list(directory)) {
+            return files
+                .map(file -> file.getFileName().toString())
+                .filter(name -> name.length() > prefix.length() + 1 + suffix.length()
+                    && name.startsWith(prefix + "-") && name.endsWith(suffix))
+                .map(name -> name.substring(prefix.length() + 1, name.length() - suffix.length()))
+                .filter(index -> index.length() <= 9 && index.chars().allMatch(Character::isDigit))
+                .map(Integer::parseInt)
+                .sorted()
+                .toList();
+        }
+    }
 }
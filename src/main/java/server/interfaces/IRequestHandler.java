@@ -4,7 +4,30 @@ import model.RequestAccumulator;
 import model.ServerResponse;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
+/**
+ * The accumulator belongs to the connection and is reused for its next frame once handleRequest returns, so
+ * implementations have to parse it before returning.
+ */
 public interface IRequestHandler extends AutoCloseable {
     CompletableFuture<ServerResponse> handleRequest(RequestAccumulator requestBody);
+
+    /**
+     * Callback variant used by the connection, implementations can override it to hand the response over
+     * without allocating futures per request.
+     */
+    default void handleRequest(RequestAccumulator requestBody, BiConsumer<ServerResponse, Throwable> callback) {
+        handleRequest(requestBody).whenComplete(callback);
+    }
+
+    /**
+     * Called by the connection once the header block of a frame arrived ahead of its body. Returns null to read
+     * the body and handle the request, or the response to answer it with while the body is skipped. Frames that
+     * arrive whole are not checked here, handleRequest sees them with {@link RequestAccumulator#isHeaderChecked()}
+     * false.
+     */
+    default ServerResponse checkHeader(RequestAccumulator requestBody) {
+        return null;
+    }
 }
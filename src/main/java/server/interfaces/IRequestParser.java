@@ -3,6 +3,20 @@ package server.interfaces;
 import model.RequestAccumulator;
 import model.ServerRequest;
 
+import java.nio.ByteBuffer;
+
 public interface IRequestParser {
     ServerRequest parseRequest(RequestAccumulator requestContent);
+
+    /**
+     * Parses the header block of a frame whose body has not been read, the request's body is empty.
+     */
+    ServerRequest parseHeader(RequestAccumulator requestContent);
+
+    /**
+     * Parses one complete frame starting at the buffer's position and advances the position past it.
+     *
+     * @throws IllegalArgumentException or {@link java.nio.BufferUnderflowException} if the frame is malformed
+     */
+    ServerRequest parseFrame(ByteBuffer frame);
 }
@@ -3,4 +3,9 @@ package server.interfaces;
 public interface IRequestRouteConfiguration {
     void addHandler(String path, IRequestRouteHandler requestRouteHandler);
     IRequestRouteHandler getHandler(String path);
+
+    /**
+     * The handler for the path, null if there is none.
+     */
+    IRequestRouteHandler findHandler(String path);
 }
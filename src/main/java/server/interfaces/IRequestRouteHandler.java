@@ -7,4 +7,21 @@ import java.util.concurrent.CompletableFuture;
 
 public interface IRequestRouteHandler {
     CompletableFuture<InternalServerResponse> handleRequest(ServerRequest serverRequest);
+
+    /**
+     * Routes that pass requests on as received (e.g. a proxy) get the raw header block in
+     * {@link ServerRequest#headerBlock()}, so they do not have to encode the headers again.
+     */
+    default boolean forwardsHeaderBlock() {
+        return false;
+    }
+
+    /**
+     * Cheap checks on a request before its body is read (e.g. required headers, credentials or the body size),
+     * the request's body is empty and bodyLength is the announced one. A non-null response rejects the request
+     * without buffering its body. Runs once per request, on the I/O thread, so it must not block.
+     */
+    default InternalServerResponse checkHeader(ServerRequest serverRequest, long bodyLength) {
+        return null;
+    }
 }
@@ -0,0 +1,16 @@
+package server.interfaces;
+
+import model.Priority;
+
+/**
+ * Task that tells a scheduling executor how to queue it: the priority class, and the flow (client or connection)
+ * it is queued under so flows get fair shares of the executor. Other tasks are NORMAL and share one flow.
+ */
+public interface IScheduledTask extends Runnable {
+    Priority priority();
+
+    /**
+     * Key of the flow the task belongs to, compared with equals(), null for the shared default flow.
+     */
+    Object flowKey();
+}